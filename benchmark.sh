@@ -25,6 +25,8 @@ BASE_URL_GRAALVM="http://localhost:${PORT_GRAALVM}"
 WARMUP_REQUESTS=10
 BENCHMARK_REQUESTS=100
 CONCURRENT_REQUESTS=10
+SEARCH_BURST_REQUESTS=${SEARCH_BURST_REQUESTS:-2000}
+SEARCH_BURST_CONCURRENCY=${SEARCH_BURST_CONCURRENCY:-200}
 
 # Results directory
 RESULTS_DIR="$SCRIPT_DIR/benchmark-results"
@@ -114,6 +116,90 @@ measure_memory() {
     fi
 }
 
+# Function to list distinct search URLs for the burst (up to 12 * 28 * 9 = 3024): identical searches would all
+# join or be served from one coalesced run, so each request varies departure_date and pax
+search_burst_urls() {
+    local base_url=$1
+    local count=0
+    for month in 01 02 03 04 05 06 07 08 09 10 11 12; do
+        for day in $(seq -w 1 28); do
+            for pax in 1 2 3 4 5 6 7 8 9; do
+                [ $count -ge $SEARCH_BURST_REQUESTS ] && return 0
+                echo "$base_url/api/search?from=CGK&to=DPS&trip_type=oneway&departure_date=2027-${month}-${day}&pax=${pax}"
+                count=$((count + 1))
+            done
+        done
+    done
+}
+
+# Function to measure steady-state memory and thread count after a burst of searches
+measure_search_burst() {
+    local service_name=$1
+    local base_url=$2
+    local pid_file="/tmp/${service_name}_pid.txt"
+
+    if [ ! -f "$pid_file" ]; then
+        echo -e "${RED}✗${NC} PID file not found for $service_name"
+        return 1
+    fi
+
+    local pid=$(cat "$pid_file")
+
+    print_header "Search Burst: $service_name ($SEARCH_BURST_REQUESTS searches, $SEARCH_BURST_CONCURRENCY concurrent)"
+
+    # Every request is a distinct search, so each one starts its own aggregation
+    search_burst_urls "$base_url" | xargs -n 1 -P $SEARCH_BURST_CONCURRENCY curl -s -o /dev/null \
+        > "/tmp/${service_name}_burst_curl.txt" 2>&1 &
+    local burst_pid=$!
+
+    # Sample peak RSS and OS thread count while the aggregators are running
+    local peak_rss_kb=0
+    local peak_threads=0
+    while kill -0 $burst_pid 2>/dev/null; do
+        local rss_kb=$(ps -o rss= -p "$pid" 2>/dev/null | tr -d ' ')
+        local threads=$(ps -o nlwp= -p "$pid" 2>/dev/null | tr -d ' ')
+        if [ -z "$threads" ] && [ -d "/proc/$pid/task" ]; then
+            threads=$(ls /proc/$pid/task | wc -l | tr -d ' ')
+        fi
+        [ -n "$rss_kb" ] && [ "$rss_kb" -gt "$peak_rss_kb" ] && peak_rss_kb=$rss_kb
+        [ -n "$threads" ] && [ "$threads" -gt "$peak_threads" ] && peak_threads=$threads
+        sleep 0.5
+    done
+
+    # Let the searches finish (sources take up to ~7s) before the steady-state sample
+    sleep 10
+    local steady_rss_kb=$(ps -o rss= -p "$pid" 2>/dev/null | tr -d ' ')
+
+    local peak_rss_mb=$(echo "scale=2; $peak_rss_kb / 1024" | bc)
+    local steady_rss_mb=$(echo "scale=2; ${steady_rss_kb:-0} / 1024" | bc)
+    echo -e "${GREEN}✓${NC} $service_name peak RSS: ${GREEN}${peak_rss_mb} MB${NC}, peak OS threads: ${GREEN}${peak_threads}${NC}"
+    echo -e "${GREEN}✓${NC} $service_name steady-state RSS: ${GREEN}${steady_rss_mb} MB${NC}"
+    echo "$peak_rss_mb" > "/tmp/${service_name}_burst_peak_memory.txt"
+    echo "$steady_rss_mb" > "/tmp/${service_name}_burst_steady_memory.txt"
+    echo "$peak_threads" > "/tmp/${service_name}_burst_threads.txt"
+}
+
+# Function to compare the platform and virtual thread execution models on the JAR
+compare_thread_models() {
+    local jar_cmd="cd $JAR_SERVICE_DIR && java -jar target/service-java-1.0.0.jar --server.port=$PORT_JAR"
+
+    for model in platform virtual; do
+        local name="jar_${model}"
+        local virtual_enabled=false
+        [ "$model" = "virtual" ] && virtual_enabled=true
+
+        print_header "Benchmarking JAR Service ($model threads)"
+        measure_startup_time "$name" "$jar_cmd --spring.threads.virtual.enabled=$virtual_enabled --flight.search.executor=$model" "$BASE_URL_JAR/health"
+        measure_memory "$name"
+        measure_search_burst "$name" "$BASE_URL_JAR"
+
+        if [ -f "/tmp/${name}_pid.txt" ]; then
+            kill $(cat "/tmp/${name}_pid.txt") 2>/dev/null || true
+            sleep 3
+        fi
+    done
+}
+
 # Function to measure binary size
 measure_binary_size() {
     local service_name=$1
@@ -206,6 +292,18 @@ generate_report() {
         fi
         echo ""
         
+        # Thread Models
+        echo "=== THREAD MODEL (JAR) ==="
+        for model in platform virtual; do
+            if [ -f "/tmp/jar_${model}_startup.txt" ]; then
+                echo "${model}: startup $(cat /tmp/jar_${model}_startup.txt)s, idle RSS $(cat /tmp/jar_${model}_memory.txt 2>/dev/null) MB"
+            fi
+            if [ -f "/tmp/jar_${model}_burst_peak_memory.txt" ]; then
+                echo "${model}: burst peak RSS $(cat /tmp/jar_${model}_burst_peak_memory.txt) MB, steady RSS $(cat /tmp/jar_${model}_burst_steady_memory.txt) MB, peak OS threads $(cat /tmp/jar_${model}_burst_threads.txt)"
+            fi
+        done
+        echo ""
+
         # Binary Size
         echo "=== BINARY SIZE ==="
         if [ -f "/tmp/jar_size.txt" ]; then
@@ -249,6 +347,11 @@ cleanup() {
     if [ -f "/tmp/native_pid.txt" ]; then
         kill $(cat "/tmp/native_pid.txt") 2>/dev/null || true
     fi
+    for model in platform virtual; do
+        if [ -f "/tmp/jar_${model}_pid.txt" ]; then
+            kill $(cat "/tmp/jar_${model}_pid.txt") 2>/dev/null || true
+        fi
+    done
     
     pkill -f "service-java" || true
     sleep 2
@@ -298,6 +401,11 @@ main() {
         kill $(cat "/tmp/jar_pid.txt") 2>/dev/null || true
         sleep 3
     fi
+
+    # Compare platform vs virtual threads (requires Redis for /api/search)
+    if [ "${SKIP_THREAD_MODELS:-0}" != "1" ]; then
+        compare_thread_models
+    fi
     
     # Benchmark Native
     print_header "Benchmarking Native Image Service"
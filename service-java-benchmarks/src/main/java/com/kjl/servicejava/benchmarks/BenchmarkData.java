@@ -0,0 +1,25 @@
+package com.kjl.servicejava.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Loads the sample payloads from the repository's data/ directory.
+ * Override the location with -Dbenchmark.data.dir=/path/to/data.
+ */
+final class BenchmarkData {
+    private static final Path DATA_DIR = Path.of(System.getProperty("benchmark.data.dir", "../data"));
+
+    private BenchmarkData() {
+    }
+
+    static String read(String fileName) {
+        try {
+            return Files.readString(DATA_DIR.resolve(fileName));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read " + DATA_DIR.resolve(fileName).toAbsolutePath(), e);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.kjl.servicejava.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.kjl.servicejava.model.FlightResult;
+import com.kjl.servicejava.util.CompactFrameEncoder;
+import com.kjl.servicejava.util.FlightResultCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Size and cost of a WebSocket flight frame per transport encoding: JSON text vs. compact CBOR
+ * (query-constant fields sent once in a header frame), each with and without permessage-deflate.
+ * The JMH methods measure encoding time per flight; {@link #main} prints the bytes per flight of a
+ * 24-result search, header frame included:
+ * {@code java -cp target/benchmarks.jar com.kjl.servicejava.benchmarks.FlightFrameEncodingBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FlightFrameEncodingBenchmark {
+    private static final int FLIGHTS = 24;
+    private static final String[] SOURCES = {"kiwi", "trip", "12go"};
+
+    private CompactFrameEncoder encoder;
+    private List<byte[]> frames;
+    private int next;
+
+    @Setup
+    public void setup() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        encoder = new CompactFrameEncoder(objectMapper);
+        frames = buildFrames(new FlightResultCodec(objectMapper));
+    }
+
+    @Benchmark
+    public byte[] json() {
+        // Current path: the annotated JSON bytes are sent as-is
+        return nextFrame();
+    }
+
+    @Benchmark
+    public byte[] cbor() {
+        return encoder.encode(nextFrame(), true).getBytes();
+    }
+
+    private byte[] nextFrame() {
+        byte[] frame = frames.get(next);
+        next = (next + 1) % frames.size();
+        return frame;
+    }
+
+    public static void main(String[] args) {
+        ObjectMapper objectMapper = new ObjectMapper();
+        CompactFrameEncoder encoder = new CompactFrameEncoder(objectMapper);
+        List<byte[]> frames = buildFrames(new FlightResultCodec(objectMapper));
+
+        List<byte[]> cbor = new ArrayList<>();
+        ObjectNode header = null;
+        for (byte[] frame : frames) {
+            CompactFrameEncoder.Encoded encoded = encoder.encode(frame, true);
+            if (!encoded.getHeader().equals(header)) {
+                header = encoded.getHeader();
+                cbor.add(encoder.encodeHeader(header));
+            }
+            cbor.add(encoded.getBytes());
+        }
+
+        System.out.printf("%-14s %10s%n", "encoding", "bytes/flight");
+        System.out.printf("%-14s %10.1f%n", "json", (double) total(frames) / FLIGHTS);
+        System.out.printf("%-14s %10.1f%n", "json+deflate", (double) deflated(frames) / FLIGHTS);
+        System.out.printf("%-14s %10.1f%n", "cbor", (double) total(cbor) / FLIGHTS);
+        System.out.printf("%-14s %10.1f%n", "cbor+deflate", (double) deflated(cbor) / FLIGHTS);
+    }
+
+    private static long total(List<byte[]> messages) {
+        long bytes = 0;
+        for (byte[] message : messages) {
+            bytes += message.length;
+        }
+        return bytes;
+    }
+
+    /**
+     * permessage-deflate with context takeover: one raw deflate stream, sync-flushed per message,
+     * minus the 4-byte empty block trailer the extension strips.
+     */
+    private static long deflated(List<byte[]> messages) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        byte[] buffer = new byte[64 * 1024];
+        long bytes = 0;
+        for (byte[] message : messages) {
+            deflater.setInput(message);
+            int n;
+            do {
+                n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                bytes += n;
+            } while (n == buffer.length);
+            bytes -= 4;
+        }
+        deflater.end();
+        return bytes;
+    }
+
+    private static List<byte[]> buildFrames(FlightResultCodec codec) {
+        List<byte[]> frames = new ArrayList<>(FLIGHTS);
+        for (int i = 1; i <= FLIGHTS; i++) {
+            String source = SOURCES[i % SOURCES.length];
+            String flightNumber = "GA" + (100 + i * 37);
+            long price = 1200000L + i * 73500L;
+
+            FlightResult flight = new FlightResult();
+            flight.setSource(source);
+            flight.setAirline("Garuda");
+            flight.setFlightNumber(flightNumber);
+            flight.setDepartureTime("14:30");
+            flight.setPrice(price);
+            flight.setFrom("CGK");
+            flight.setTo("DPS");
+            flight.setDepartureDate("2026-12-01");
+            flight.setTripType("oneway");
+            flight.setPax(2);
+            flight.setTimestamp(codec.timestamp());
+            flight.setSeatClass("Economy");
+            flight.setAffiliateLink("https://" + source + ".com/affiliate?source=flight_search&from=CGK&to=DPS&flight="
+                + flightNumber + "&price=" + price + "&pax=2&ref=YOUR_AFFILIATE_ID");
+            flight.setBookingUrl("https://" + source + ".com/flights/CGK-DPS/" + flightNumber + "?departure_date=2026-12-01&pax=2");
+            flight.setIsCommon(false);
+
+            // Same members as a flight frame: the progress stamped by SearchLifecycle plus the seq QueryFanoutHub adds
+            String members = "\"seq\":" + i + ",\"progress\":" + (i * 100 / FLIGHTS) + ",\"received_flights\":" + i
+                + ",\"total_expected\":" + FLIGHTS + ",\"status\":\"searching\"";
+            frames.add(codec.withFields(codec.encode(flight), members));
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,119 @@
+package com.kjl.servicejava.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kjl.servicejava.model.FlightResult;
+import com.kjl.servicejava.util.FlightResultCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-result cost of the flight serialization path.
+ * {@code legacyMap*} reproduce the former HashMap + String.format + ObjectMapper path for comparison;
+ * run with -prof gc to compare gc.alloc.rate.norm (bytes allocated per result).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FlightSerializationBenchmark {
+    private static final String PROGRESS_MEMBERS =
+        "\"progress\":41,\"received_flights\":10,\"total_expected\":24,\"status\":\"searching\"";
+
+    private ObjectMapper objectMapper;
+    private FlightResultCodec codec;
+    private FlightResult result;
+    private byte[] encoded;
+    private String encodedString;
+
+    @Setup
+    public void setup() {
+        objectMapper = new ObjectMapper();
+        codec = new FlightResultCodec(objectMapper);
+        result = buildResult();
+        encoded = codec.encode(result);
+        encodedString = new String(encoded);
+    }
+
+    @Benchmark
+    public byte[] buildAndEncode() {
+        return codec.encode(buildResult());
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codec.encode(result);
+    }
+
+    @Benchmark
+    public byte[] annotateProgress() {
+        return codec.withFields(encoded, PROGRESS_MEMBERS);
+    }
+
+    @Benchmark
+    public String peekType() {
+        return codec.peekType(encoded);
+    }
+
+    @Benchmark
+    public String legacyMapBuildAndEncode() throws Exception {
+        Map<String, Object> map = new HashMap<>();
+        map.put("source", "kiwi");
+        map.put("airline", "Garuda");
+        map.put("flight_number", "GA456");
+        map.put("departure_time", "14:30");
+        map.put("price", 2400000);
+        map.put("from", "CGK");
+        map.put("to", "DPS");
+        map.put("departure_date", "2026-12-01");
+        map.put("return_date", null);
+        map.put("trip_type", "oneway");
+        map.put("pax", 2);
+        map.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+        map.put("seat_class", "Economy");
+        map.put("affiliate_link", String.format("https://%s.com/affiliate?source=flight_search&from=%s&to=%s&flight=%s&price=%d&pax=%d&ref=YOUR_AFFILIATE_ID",
+            "kiwi", "CGK", "DPS", "GA456", 2400000, 2));
+        map.put("booking_url", String.format("https://%s.com/flights/%s-%s/%s?departure_date=%s&pax=%d",
+            "kiwi", "CGK", "DPS", "GA456", "2026-12-01", 2));
+        map.put("is_common", true);
+        return objectMapper.writeValueAsString(map);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public String legacyMapReparse() throws Exception {
+        // What each SSE/WebSocket/long-poll client used to do per result
+        Map<String, Object> flightData = objectMapper.readValue(encodedString, Map.class);
+        flightData.put("progress", 41);
+        flightData.put("received_flights", 10);
+        flightData.put("total_expected", 24);
+        flightData.put("status", "searching");
+        return objectMapper.writeValueAsString(flightData);
+    }
+
+    private FlightResult buildResult() {
+        FlightResult flight = new FlightResult();
+        flight.setSource("kiwi");
+        flight.setAirline("Garuda");
+        flight.setFlightNumber("GA456");
+        flight.setDepartureTime("14:30");
+        flight.setPrice(2400000L);
+        flight.setFrom("CGK");
+        flight.setTo("DPS");
+        flight.setDepartureDate("2026-12-01");
+        flight.setTripType("oneway");
+        flight.setPax(2);
+        flight.setTimestamp(codec.timestamp());
+        flight.setSeatClass("Economy");
+        flight.setAffiliateLink("https://kiwi.com/affiliate?source=flight_search&from=CGK&to=DPS&flight=GA456&price=2400000&pax=2&ref=YOUR_AFFILIATE_ID");
+        flight.setBookingUrl("https://kiwi.com/flights/CGK-DPS/GA456?departure_date=2026-12-01&pax=2");
+        flight.setIsCommon(true);
+        return flight;
+    }
+}
@@ -0,0 +1,57 @@
+package com.kjl.servicejava.benchmarks;
+
+import com.kjl.servicejava.model.InvoiceValidationResponse;
+import com.kjl.servicejava.service.InvoiceValidationService;
+import com.kjl.servicejava.validation.AirlinesOrderValidator;
+import com.kjl.servicejava.validation.OrderValidatorFactory;
+import com.kjl.servicejava.validation.ProductOrderValidator;
+import com.kjl.servicejava.validation.ReservationOrderValidator;
+import com.kjl.servicejava.validation.ServiceOrderValidator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end {@link InvoiceValidationService#validateInvoice(String)} (parse + validate) for every sample in data/.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InvoiceValidationBenchmark {
+
+    @Param({
+        "product_order.json",
+        "service_order.json",
+        "reservation_order.json",
+        "airlines_order.json",
+        "corrected_product_order.json",
+        "corrected_service_order.json",
+        "corrected_reservation_order.json",
+        "corrected_airlines_order.json"
+    })
+    public String file;
+
+    private InvoiceValidationService invoiceValidationService;
+    private String body;
+
+    @Setup
+    public void setup() {
+        OrderValidatorFactory factory = new OrderValidatorFactory(List.of(
+            new ProductOrderValidator(),
+            new ServiceOrderValidator(),
+            new ReservationOrderValidator(),
+            new AirlinesOrderValidator()
+        ));
+        invoiceValidationService = new InvoiceValidationService(factory);
+        body = BenchmarkData.read(file);
+    }
+
+    @Benchmark
+    public InvoiceValidationResponse validateInvoice() {
+        return invoiceValidationService.validateInvoice(body);
+    }
+}
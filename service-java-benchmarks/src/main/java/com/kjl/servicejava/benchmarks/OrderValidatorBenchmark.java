@@ -0,0 +1,74 @@
+package com.kjl.servicejava.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kjl.servicejava.dto.ValidationResponseBuilder;
+import com.kjl.servicejava.model.AirlinesOrder;
+import com.kjl.servicejava.model.BaseOrder;
+import com.kjl.servicejava.model.InvoiceValidationResponse;
+import com.kjl.servicejava.model.ProductOrder;
+import com.kjl.servicejava.model.ReservationOrder;
+import com.kjl.servicejava.model.ServiceOrder;
+import com.kjl.servicejava.validation.AbstractOrderValidator;
+import com.kjl.servicejava.validation.AirlinesOrderValidator;
+import com.kjl.servicejava.validation.ProductOrderValidator;
+import com.kjl.servicejava.validation.ReservationOrderValidator;
+import com.kjl.servicejava.validation.ServiceOrderValidator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validation only (no JSON parsing) for each {@link AbstractOrderValidator} subclass on its corrected sample order.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderValidatorBenchmark {
+
+    @Param({"Product", "Service", "Reservation", "Airline"})
+    public String orderType;
+
+    private AbstractOrderValidator validator;
+    private BaseOrder order;
+
+    @Setup
+    public void setup() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        switch (orderType) {
+            case "Product" -> {
+                validator = new ProductOrderValidator();
+                order = read(objectMapper, "corrected_product_order.json", "ProductOrder", ProductOrder.class);
+            }
+            case "Service" -> {
+                validator = new ServiceOrderValidator();
+                order = read(objectMapper, "corrected_service_order.json", "ServiceOrder", ServiceOrder.class);
+            }
+            case "Reservation" -> {
+                validator = new ReservationOrderValidator();
+                order = read(objectMapper, "corrected_reservation_order.json", "ReservationOrder", ReservationOrder.class);
+            }
+            case "Airline" -> {
+                validator = new AirlinesOrderValidator();
+                order = read(objectMapper, "corrected_airlines_order.json", "AirlinesOrder", AirlinesOrder.class);
+            }
+            default -> throw new IllegalArgumentException("Unknown order type: " + orderType);
+        }
+    }
+
+    @Benchmark
+    public InvoiceValidationResponse validate() {
+        InvoiceValidationResponse response = ValidationResponseBuilder.create().build();
+        validator.validate(order, response);
+        return response;
+    }
+
+    private static <T extends BaseOrder> T read(ObjectMapper objectMapper, String file, String wrapper, Class<T> type)
+            throws Exception {
+        JsonNode root = objectMapper.readTree(BenchmarkData.read(file));
+        return objectMapper.treeToValue(root.get(wrapper), type);
+    }
+}
@@ -0,0 +1,32 @@
+package com.kjl.servicejava.benchmarks;
+
+import com.kjl.servicejava.service.FlightSearchService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Search key canonicalization and query ID hashing done for every new search run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryIdBenchmark {
+
+    private FlightSearchService flightSearchService;
+
+    @Setup
+    public void setup() {
+        // generateQueryId only hashes its arguments; no collaborators are needed
+        flightSearchService = new FlightSearchService(null, null, null, null, null, null, null, null, null, 30000, 60000, 300000, 0, 2000);
+    }
+
+    @Benchmark
+    public String generateQueryId() {
+        String searchKey = FlightSearchService.searchKey("CGK", "DPS", "roundtrip", "2026-12-01", "2026-12-08", 2);
+        return flightSearchService.generateQueryId(searchKey, 1);
+    }
+}
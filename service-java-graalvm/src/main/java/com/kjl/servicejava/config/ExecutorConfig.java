@@ -0,0 +1,44 @@
+package com.kjl.servicejava.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executor used by the flight aggregator and its per-source fetchers.
+ * "virtual" (default) runs every task on its own virtual thread, "platform" keeps the cached platform thread pool.
+ * Tomcat request handling follows spring.threads.virtual.enabled.
+ * Bulk invoice validation is CPU bound and runs on its own fixed platform pool.
+ * Streaming connections are drained by per-connection sender tasks on virtual threads.
+ */
+@Configuration
+public class ExecutorConfig {
+
+    @Value("${flight.search.executor:virtual}")
+    private String executorMode;
+
+    @Value("${invoice.bulk.parallelism:0}")
+    private int invoiceParallelism;
+
+    @Bean(name = "flightSearchExecutor", destroyMethod = "shutdownNow")
+    public ExecutorService flightSearchExecutor() {
+        if ("platform".equalsIgnoreCase(executorMode)) {
+            return Executors.newCachedThreadPool();
+        }
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("flight-search-", 0).factory());
+    }
+
+    @Bean(name = "streamSenderExecutor", destroyMethod = "shutdownNow")
+    public ExecutorService streamSenderExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("stream-sender-", 0).factory());
+    }
+
+    @Bean(name = "invoiceValidationExecutor", destroyMethod = "shutdownNow")
+    public ExecutorService invoiceValidationExecutor() {
+        int threads = invoiceParallelism > 0 ? invoiceParallelism : Runtime.getRuntime().availableProcessors();
+        return Executors.newFixedThreadPool(threads, Thread.ofPlatform().name("invoice-validate-", 0).daemon().factory());
+    }
+}
@@ -0,0 +1,32 @@
+package com.kjl.servicejava.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+
+/**
+ * HTTP client shared by every upstream source adapter.
+ * One client keeps one connection pool: HTTP/2 connections are multiplexed across concurrent searches, and
+ * HTTP/1.1 connections (when a source does not negotiate HTTP/2) are kept alive and reused.
+ * Response handling runs on virtual threads.
+ */
+@Configuration
+public class FlightSourceConfig {
+
+    @Value("${flight.sources.connect-timeout-ms:2000}")
+    private long connectTimeoutMillis;
+
+    @Bean(name = "flightSourceHttpClient")
+    public HttpClient flightSourceHttpClient() {
+        return HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .executor(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("flight-source-http-", 0).factory()))
+            .build();
+    }
+}
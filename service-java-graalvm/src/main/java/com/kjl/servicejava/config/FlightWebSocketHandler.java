@@ -1,136 +1,182 @@
 package com.kjl.servicejava.config;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.kjl.servicejava.service.OutboundQueueService;
+import com.kjl.servicejava.service.QueryFanoutHub;
+import com.kjl.servicejava.service.ResultViewService;
+import com.kjl.servicejava.service.StreamBatchingService;
+import com.kjl.servicejava.util.CompactFrameEncoder;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.connection.Message;
-import org.springframework.data.redis.connection.MessageListener;
-import org.springframework.data.redis.listener.ChannelTopic;
-import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.SubProtocolCapable;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
-import java.io.IOException;
 import java.net.URI;
-import java.util.Map;
-
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Streams a query's frames over WebSocket.
+ * Frames are JSON text by default. Clients negotiating the "flight.cbor.v1" subprotocol (or passing encoding=cbor)
+ * get compact CBOR binary frames instead, with the query-constant fields sent once in a "header" frame.
+ */
 @Component
-public class FlightWebSocketHandler extends TextWebSocketHandler {
+public class FlightWebSocketHandler extends TextWebSocketHandler implements SubProtocolCapable {
+    public static final String JSON_PROTOCOL = "flight.json.v1";
+    public static final String CBOR_PROTOCOL = "flight.cbor.v1";
+
+    @Autowired
+    private QueryFanoutHub queryFanoutHub;
+
+    @Autowired
+    private OutboundQueueService outboundQueueService;
 
     @Autowired
-    private RedisMessageListenerContainer redisMessageListenerContainer;
+    private StreamBatchingService streamBatchingService;
 
     @Autowired
-    private ObjectMapper objectMapper;
+    private CompactFrameEncoder compactFrameEncoder;
 
-    private static final int EXPECTED_FLIGHTS = 24;
+    @Autowired
+    private ResultViewService resultViewService;
+
+    @Override
+    public List<String> getSubProtocols() {
+        return List.of(CBOR_PROTOCOL, JSON_PROTOCOL);
+    }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        String queryId = extractQueryId(session.getUri());
+        String queryId = extractParam(session.getUri(), "query_id");
         if (queryId == null) {
             session.close(CloseStatus.BAD_DATA.withReason("Missing query_id parameter"));
             return;
         }
 
-        int[] receivedFlights = {0};
+        // Frames are sent from the session's own bounded queue, so a slow client only delays itself
+        boolean cbor = CBOR_PROTOCOL.equals(session.getAcceptedProtocol())
+            || CompactFrameEncoder.ENCODING.equals(extractParam(session.getUri(), "encoding"));
+        OutboundQueueService.OutboundQueue queue = outboundQueueService.open(new OutboundQueueService.Sender() {
+            // Header the client currently holds; only touched by the queue's sender task
+            private ObjectNode header;
 
-        MessageListener messageListener = new MessageListener() {
             @Override
-            public void onMessage(Message message, byte[] pattern) {
-                try {
-                    String payload = new String(message.getBody());
-                    Map<String, Object> flightData = objectMapper.readValue(payload, Map.class);
-
-                    // Check if this is a cancellation message
-                    if ("cancelled".equals(flightData.get("type"))) {
-                        Map<String, Object> cancelMsg = Map.of(
-                            "type", "cancelled",
-                            "progress", 0,
-                            "status", "cancelled",
-                            "message", "Search was cancelled"
-                        );
-                        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(cancelMsg)));
-                        return;
+            public void send(QueryFanoutHub.Frame frame) throws Exception {
+                if (!cbor) {
+                    session.sendMessage(new TextMessage(frame.getBytes()));
+                } else {
+                    CompactFrameEncoder.Encoded encoded = frame.getEncoded(CompactFrameEncoder.ENCODING,
+                        f -> compactFrameEncoder.encode(f.getBytes(), f.getResult() != null));
+                    if (encoded.getHeader() != null && !encoded.getHeader().equals(header)) {
+                        session.sendMessage(new BinaryMessage(compactFrameEncoder.encodeHeader(encoded.getHeader())));
+                        header = encoded.getHeader();
                     }
+                    session.sendMessage(new BinaryMessage(encoded.getBytes()));
+                }
+                // The search is over (completed, expired or cancelled); nothing else will be sent
+                if (frame.isTerminal()) {
+                    session.close(CloseStatus.NORMAL);
+                }
+            }
 
-                    receivedFlights[0]++;
+            @Override
+            public void close(OutboundQueueService.CloseReason reason) {
+                try {
+                    session.close(reason == OutboundQueueService.CloseReason.OVERFLOW
+                        ? CloseStatus.POLICY_VIOLATION.withReason("Slow consumer")
+                        : CloseStatus.SERVER_ERROR.withReason("Send failed"));
+                } catch (Exception e) {
+                    // Session is already gone
+                }
+            }
+        }, extractParam(session.getUri(), "overflow"));
 
-                    // Calculate progress
-                    int progress = (int) ((double) receivedFlights[0] / EXPECTED_FLIGHTS * 100);
-                    if (progress > 100) {
-                        progress = 100;
-                    }
+        URI uri = session.getUri();
 
-                    flightData.put("progress", progress);
-                    flightData.put("received_flights", receivedFlights[0]);
-                    flightData.put("total_expected", EXPECTED_FLIGHTS);
-                    flightData.put("status", "searching");
+        // Optional server-side view, then micro-batching of the results it lets through (batch_ms / batch_size)
+        ResultViewService.Spec view = ResultViewService.Spec.parse(extractParam(uri, "min_price"),
+            extractParam(uri, "max_price"), extractParam(uri, "airlines"), extractParam(uri, "depart_after"),
+            extractParam(uri, "depart_before"), extractParam(uri, "top_k"));
+        QueryFanoutHub.Subscriber subscriber = resultViewService.view(streamBatchingService.subscriber(queue::offer,
+            parseInt(extractParam(uri, "batch_ms")), parseInt(extractParam(uri, "batch_size"))), view);
 
-                    // Check if we've received enough flights
-                    if (receivedFlights[0] >= EXPECTED_FLIGHTS) {
-                        flightData.put("status", "completed");
-                        flightData.put("progress", 99);
-                        flightData.put("message", "Search completed");
-                    }
+        // A reconnecting client passes the "seq" of the last frame it received; otherwise replay everything.
+        // Views are rebuilt from the first result.
+        long fromSeq = view != null ? 0 : parseSeq(extractParam(uri, "from_seq"));
 
-                    session.sendMessage(new TextMessage(objectMapper.writeValueAsString(flightData)));
-
-                    // If search is completed, send final completion message
-                    if ("completed".equals(flightData.get("status")) || "completed".equals(flightData.get("type"))) {
-                        Map<String, Object> completionMsg = Map.of(
-                            "type", "completed",
-                            "progress", 100,
-                            "status", "completed",
-                            "message", "All flights found",
-                            "total_flights", receivedFlights[0]
-                        );
-                        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(completionMsg)));
-                    }
-                } catch (IOException e) {
-                    // Handle error
-                }
-            }
-        };
-
-        ChannelTopic topic = new ChannelTopic("flight:" + queryId);
-        redisMessageListenerContainer.addMessageListener(messageListener, topic);
-
-        // Store listener in session attributes for cleanup
-        session.getAttributes().put("messageListener", messageListener);
-        session.getAttributes().put("topic", topic);
-
-        // Send initial progress
-        Map<String, Object> initialProgress = Map.of(
-            "type", "progress",
-            "progress", 0,
-            "status", "searching",
-            "message", "Starting flight search..."
-        );
-        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(initialProgress)));
+        // Send initial progress on a fresh connection only
+        if (fromSeq == 0) {
+            queue.offer(queryFanoutHub.getInitialFrame());
+        }
+
+        // Store subscriber in session attributes for cleanup
+        session.getAttributes().put("subscriber", subscriber);
+        session.getAttributes().put("queue", queue);
+        session.getAttributes().put("queryId", queryId);
+
+        queryFanoutHub.subscribe(queryId, fromSeq, subscriber);
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        MessageListener listener = (MessageListener) session.getAttributes().get("messageListener");
-        ChannelTopic topic = (ChannelTopic) session.getAttributes().get("topic");
-        if (listener != null && topic != null) {
-            redisMessageListenerContainer.removeMessageListener(listener);
+        QueryFanoutHub.Subscriber subscriber = (QueryFanoutHub.Subscriber) session.getAttributes().get("subscriber");
+        OutboundQueueService.OutboundQueue queue = (OutboundQueueService.OutboundQueue) session.getAttributes().get("queue");
+        String queryId = (String) session.getAttributes().get("queryId");
+        if (subscriber != null && queryId != null) {
+            queryFanoutHub.unsubscribe(queryId, subscriber);
+        }
+        if (queue != null) {
+            queue.close();
         }
     }
 
-    private String extractQueryId(URI uri) {
-        if (uri == null || uri.getQuery() == null) {
+    private Integer parseInt(String value) {
+        if (value == null) {
             return null;
         }
-        String query = uri.getQuery();
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private long parseSeq(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * URL-decoded value of a query parameter ("+" as space), or null if it is missing, empty or malformed.
+     */
+    private String extractParam(URI uri, String name) {
+        if (uri == null || uri.getRawQuery() == null) {
+            return null;
+        }
+        String query = uri.getRawQuery();
         String[] params = query.split("&");
         for (String param : params) {
-            String[] keyValue = param.split("=");
-            if (keyValue.length == 2 && "query_id".equals(keyValue[0])) {
-                return keyValue[1];
+            int separator = param.indexOf('=');
+            if (separator <= 0 || separator == param.length() - 1) {
+                continue;
+            }
+            try {
+                if (name.equals(URLDecoder.decode(param.substring(0, separator), StandardCharsets.UTF_8))) {
+                    return URLDecoder.decode(param.substring(separator + 1), StandardCharsets.UTF_8);
+                }
+            } catch (IllegalArgumentException e) {
+                // Malformed escape sequence
             }
         }
         return null;
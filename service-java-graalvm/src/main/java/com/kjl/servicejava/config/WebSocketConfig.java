@@ -1,21 +1,46 @@
 package com.kjl.servicejava.config;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.web.socket.WebSocketExtension;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.util.List;
 
 @Configuration
 @EnableWebSocket
 public class WebSocketConfig implements WebSocketConfigurer {
+    private static final String PERMESSAGE_DEFLATE = "permessage-deflate";
 
     @Autowired
     private FlightWebSocketHandler flightWebSocketHandler;
 
+    // The servlet container offers permessage-deflate; it is accepted whenever the client asks for it unless disabled
+    @Value("${flight.ws.permessage-deflate:true}")
+    private boolean permessageDeflate;
+
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         registry.addHandler(flightWebSocketHandler, "/ws/result/stream")
+            .setHandshakeHandler(new DefaultHandshakeHandler() {
+                @Override
+                protected List<WebSocketExtension> filterRequestedExtensions(ServerHttpRequest request,
+                                                                             List<WebSocketExtension> requested,
+                                                                             List<WebSocketExtension> supported) {
+                    List<WebSocketExtension> accepted = super.filterRequestedExtensions(request, requested, supported);
+                    if (permessageDeflate) {
+                        return accepted;
+                    }
+                    return accepted.stream()
+                        .filter(extension -> !PERMESSAGE_DEFLATE.equalsIgnoreCase(extension.getName()))
+                        .toList();
+                }
+            })
             .setAllowedOrigins("*");
     }
 }
@@ -1,15 +1,37 @@
 package com.kjl.servicejava.controller;
 
+import com.kjl.servicejava.service.FlightSources;
+import com.kjl.servicejava.service.OutboundQueueService;
+import com.kjl.servicejava.service.SourceCircuitBreaker;
+import com.kjl.servicejava.service.SourceLatencyStats;
+import com.kjl.servicejava.service.SourceRateLimiter;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @RestController
 public class HealthController {
 
+    @Autowired
+    private OutboundQueueService outboundQueueService;
+
+    @Autowired
+    private FlightSources flightSources;
+
+    @Autowired
+    private SourceCircuitBreaker sourceCircuitBreaker;
+
+    @Autowired
+    private SourceLatencyStats sourceLatencyStats;
+
+    @Autowired
+    private SourceRateLimiter sourceRateLimiter;
+
     @GetMapping("/")
     public ResponseEntity<Map<String, String>> root() {
         Map<String, String> response = new HashMap<>();
@@ -24,4 +46,20 @@ public class HealthController {
         response.put("message", "this service is ok :)");
         return ResponseEntity.ok(response);
     }
+
+    @GetMapping("/health/streams")
+    public ResponseEntity<Map<String, Object>> streams() {
+        return ResponseEntity.ok(outboundQueueService.getStats());
+    }
+
+    @GetMapping("/health/sources")
+    public ResponseEntity<Map<String, Object>> sources() {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("mode", flightSources.getMode());
+        response.put("breakers", sourceCircuitBreaker.getStats());
+        response.put("latency", sourceLatencyStats.getStats());
+        response.put("hedging", flightSources.getHedgeStats());
+        response.put("quota", sourceRateLimiter.getStats());
+        return ResponseEntity.ok(response);
+    }
 }
@@ -1,129 +1,126 @@
 package com.kjl.servicejava.controller;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kjl.servicejava.service.OutboundQueueService;
+import com.kjl.servicejava.service.QueryFanoutHub;
+import com.kjl.servicejava.service.ResultViewService;
+import com.kjl.servicejava.service.StreamBatchingService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.connection.Message;
-import org.springframework.data.redis.connection.MessageListener;
-import org.springframework.data.redis.listener.ChannelTopic;
-import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.IOException;
-import java.util.Map;
-
 @RestController
 @RequestMapping("/api/result")
 public class SSEController {
 
     @Autowired
-    private RedisMessageListenerContainer redisMessageListenerContainer;
+    private QueryFanoutHub queryFanoutHub;
 
     @Autowired
-    private ObjectMapper objectMapper;
+    private OutboundQueueService outboundQueueService;
 
-    private static final int EXPECTED_FLIGHTS = 24;
+    @Autowired
+    private StreamBatchingService streamBatchingService;
 
+    @Autowired
+    private ResultViewService resultViewService;
+
+    /**
+     * Streams a query's frames. Each frame backed by a stored message carries its sequence number as the event id,
+     * so a reconnecting client (Last-Event-ID header, or from_seq) resumes right after the last frame it received.
+     * A fresh connection replays every stored message before going live.
+     * Frames are sent from the connection's own bounded queue; {@code overflow} (drop-oldest, conflate or disconnect)
+     * overrides flight.stream.outbound.overflow for this connection.
+     * With {@code batch_ms} and/or {@code batch_size}, flight results are grouped into "batch" events.
+     * View parameters (min_price, max_price, airlines, depart_after, depart_before, top_k) filter results on the
+     * server; a view is always rebuilt from the first result, so such a connection never resumes mid-stream.
+     */
     @GetMapping(value = "/sse", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter sse(@RequestParam String query_id) {
+    public SseEmitter sse(@RequestParam String query_id,
+                          @RequestParam(required = false) Long from_seq,
+                          @RequestParam(required = false) String overflow,
+                          @RequestParam(required = false) Integer batch_ms,
+                          @RequestParam(required = false) Integer batch_size,
+                          @RequestParam(required = false) String min_price,
+                          @RequestParam(required = false) String max_price,
+                          @RequestParam(required = false) String airlines,
+                          @RequestParam(required = false) String depart_after,
+                          @RequestParam(required = false) String depart_before,
+                          @RequestParam(required = false) String top_k,
+                          @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
         SseEmitter emitter = new SseEmitter(300000L); // 5 minute timeout
 
-        int[] receivedFlights = {0};
+        ResultViewService.Spec view = ResultViewService.Spec.parse(min_price, max_price, airlines,
+            depart_after, depart_before, top_k);
+        long fromSeq = view != null ? 0 : resumeSeq(lastEventId, from_seq);
 
-        MessageListener messageListener = new MessageListener() {
+        OutboundQueueService.OutboundQueue queue = outboundQueueService.open(new OutboundQueueService.Sender() {
             @Override
-            public void onMessage(Message message, byte[] pattern) {
-                try {
-                    String payload = new String(message.getBody());
-                    Map<String, Object> flightData = objectMapper.readValue(payload, Map.class);
-
-                    // Check if this is a cancellation message
-                    if ("cancelled".equals(flightData.get("type"))) {
-                        Map<String, Object> cancelMsg = Map.of(
-                            "type", "cancelled",
-                            "progress", 0,
-                            "status", "cancelled",
-                            "message", "Search was cancelled"
-                        );
-                        emitter.send(SseEmitter.event().name("cancelled").data(objectMapper.writeValueAsString(cancelMsg)));
-                        emitter.complete();
-                        return;
-                    }
-
-                    receivedFlights[0]++;
-
-                    // Calculate progress
-                    int progress = (int) ((double) receivedFlights[0] / EXPECTED_FLIGHTS * 100);
-                    if (progress > 100) {
-                        progress = 100;
-                    }
-
-                    flightData.put("progress", progress);
-                    flightData.put("received_flights", receivedFlights[0]);
-                    flightData.put("total_expected", EXPECTED_FLIGHTS);
-                    flightData.put("status", "searching");
-
-                    // Check if we've received enough flights
-                    if (receivedFlights[0] >= EXPECTED_FLIGHTS) {
-                        flightData.put("status", "completed");
-                        flightData.put("progress", 99);
-                        flightData.put("message", "Search completed");
-                    }
-
-                    emitter.send(SseEmitter.event().name("flight").data(objectMapper.writeValueAsString(flightData)));
-
-                    // If search is completed, send final completion message
-                    if ("completed".equals(flightData.get("status")) || "completed".equals(flightData.get("type"))) {
-                        Map<String, Object> completionMsg = Map.of(
-                            "type", "completed",
-                            "progress", 100,
-                            "status", "completed",
-                            "message", "All flights found",
-                            "total_flights", receivedFlights[0]
-                        );
-                        emitter.send(SseEmitter.event().name("completed").data(objectMapper.writeValueAsString(completionMsg)));
-                        emitter.complete();
-                    }
-                } catch (IOException e) {
-                    emitter.completeWithError(e);
+            public void send(QueryFanoutHub.Frame frame) throws Exception {
+                emitter.send(toEvent(frame));
+                if (frame.isTerminal()) {
+                    emitter.complete();
                 }
             }
-        };
-
-        ChannelTopic topic = new ChannelTopic("flight:" + query_id);
-        redisMessageListenerContainer.addMessageListener(messageListener, topic);
-
-        // Send initial progress
-        try {
-            Map<String, Object> initialProgress = Map.of(
-                "type", "progress",
-                "progress", 0,
-                "status", "searching",
-                "message", "Starting flight search..."
-            );
-            emitter.send(SseEmitter.event().name("progress").data(objectMapper.writeValueAsString(initialProgress)));
-        } catch (IOException e) {
-            emitter.completeWithError(e);
+
+            @Override
+            public void close(OutboundQueueService.CloseReason reason) {
+                // SSE has no close status; either way a reconnecting EventSource resumes from its Last-Event-ID
+                emitter.complete();
+            }
+        }, overflow);
+
+        QueryFanoutHub.Subscriber subscriber = resultViewService.view(
+            streamBatchingService.subscriber(queue::offer, batch_ms, batch_size), view);
+
+        // Send initial progress on a fresh connection only
+        if (fromSeq == 0) {
+            queue.offer(queryFanoutHub.getInitialFrame());
         }
 
         // Cleanup on completion
         emitter.onCompletion(() -> {
-            redisMessageListenerContainer.removeMessageListener(messageListener);
+            queryFanoutHub.unsubscribe(query_id, subscriber);
+            queue.close();
         });
 
         emitter.onTimeout(() -> {
-            redisMessageListenerContainer.removeMessageListener(messageListener);
+            queryFanoutHub.unsubscribe(query_id, subscriber);
+            queue.close();
             emitter.complete();
         });
 
         emitter.onError((ex) -> {
-            redisMessageListenerContainer.removeMessageListener(messageListener);
+            queryFanoutHub.unsubscribe(query_id, subscriber);
+            queue.close();
         });
 
+        queryFanoutHub.subscribe(query_id, fromSeq, subscriber);
+
         return emitter;
     }
+
+    private static SseEmitter.SseEventBuilder toEvent(QueryFanoutHub.Frame frame) {
+        SseEmitter.SseEventBuilder event = SseEmitter.event().name(frame.getEvent()).data(frame.getJson());
+        if (frame.getSeq() > 0) {
+            event.id(String.valueOf(frame.getSeq()));
+        }
+        return event;
+    }
+
+    private static long resumeSeq(String lastEventId, Long fromSeq) {
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            try {
+                return Math.max(0, Long.parseLong(lastEventId.trim()));
+            } catch (NumberFormatException e) {
+                // Not one of our ids; start over
+                return 0;
+            }
+        }
+        return fromSeq != null ? Math.max(0, fromSeq) : 0;
+    }
 }
@@ -1,11 +1,20 @@
 package com.kjl.servicejava.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import lombok.Data;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Flight search result or lifecycle message (type = source/completed/expired/cancelled) in a query's result log.
+ * "type" is always written first so transports can tell control messages apart without a full parse.
+ * Results and lifecycle messages carry the search progress at the time they were appended.
+ */
 @Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({"type"})
 public class FlightResult {
     @JsonProperty("source")
     private String source;
@@ -20,7 +29,7 @@ public class FlightResult {
     private String departureTime;
 
     @JsonProperty("price")
-    private Double price;
+    private Long price;
 
     @JsonProperty("from")
     private String from;
@@ -28,6 +37,18 @@ public class FlightResult {
     @JsonProperty("to")
     private String to;
 
+    @JsonProperty("departure_date")
+    private String departureDate;
+
+    @JsonProperty("return_date")
+    private String returnDate;
+
+    @JsonProperty("trip_type")
+    private String tripType;
+
+    @JsonProperty("pax")
+    private Integer pax;
+
     @JsonProperty("timestamp")
     private String timestamp;
 
@@ -64,6 +85,12 @@ public class FlightResult {
     @JsonProperty("total_flights")
     private Integer totalFlights;
 
+    @JsonProperty("source_state")
+    private String sourceState;
+
+    @JsonProperty("sources")
+    private Map<String, String> sources;
+
     // Helper method to convert to Map for JSON serialization
     public Map<String, Object> toMap() {
         Map<String, Object> map = new HashMap<>();
@@ -71,9 +98,13 @@ public class FlightResult {
         map.put("airline", airline != null ? airline : "");
         map.put("flight_number", flightNumber != null ? flightNumber : "");
         map.put("departure_time", departureTime != null ? departureTime : "");
-        map.put("price", price != null ? price : 0.0);
+        map.put("price", price != null ? price : 0L);
         map.put("from", from != null ? from : "");
         map.put("to", to != null ? to : "");
+        map.put("departure_date", departureDate != null ? departureDate : "");
+        map.put("return_date", returnDate != null ? returnDate : "");
+        map.put("trip_type", tripType != null ? tripType : "");
+        map.put("pax", pax != null ? pax : 0);
         map.put("timestamp", timestamp != null ? timestamp : "");
         map.put("seat_class", seatClass != null ? seatClass : "");
         map.put("affiliate_link", affiliateLink != null ? affiliateLink : "");
@@ -86,6 +117,8 @@ public class FlightResult {
         map.put("status", status != null ? status : "");
         map.put("message", message != null ? message : "");
         map.put("total_flights", totalFlights != null ? totalFlights : 0);
+        map.put("source_state", sourceState != null ? sourceState : "");
+        map.put("sources", sources != null ? sources : new HashMap<>());
         return map;
     }
 }
@@ -0,0 +1,174 @@
+package com.kjl.servicejava.repository;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-node {@link SearchResultStore} kept in the JVM (flight.store=memory), for deployments without Redis.
+ * Each query is a ring buffer of its newest flight.stream.max-len messages that expires 30 minutes after its last
+ * append, like the Redis stream. Appends wake the blocking reader directly, so delivery needs no network hop.
+ * Per-source result keys are not kept separately; results are only reachable through the query's log.
+ */
+@Repository
+@ConditionalOnProperty(name = "flight.store", havingValue = "memory")
+public class InMemorySearchResultStore implements SearchResultStore {
+    private static final long TTL_NANOS = Duration.ofMinutes(30).toNanos();
+
+    private final ConcurrentMap<String, QueryLog> logs = new ConcurrentHashMap<>();
+    private final int capacity;
+    private final Object signal = new Object();
+    private final ScheduledExecutorService evictor;
+    private boolean woken;
+
+    public InMemorySearchResultStore(@Value("${flight.stream.max-len:1000}") int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "search-store-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.evictor.scheduleWithFixedDelay(this::evictExpired, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public void appendResult(String queryId, String source, int index, byte[] resultJson) {
+        append(queryId, resultJson);
+    }
+
+    @Override
+    public void append(String queryId, byte[] messageJson) {
+        QueryLog log = logs.computeIfAbsent(queryId, id -> new QueryLog(capacity));
+        log.append(messageJson);
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+    }
+
+    @Override
+    public List<Entry> read(String queryId, long afterSeq, int maxCount) {
+        QueryLog log = logs.get(queryId);
+        return log != null ? log.read(afterSeq, maxCount) : Collections.emptyList();
+    }
+
+    @Override
+    public long lastSeq(String queryId) {
+        QueryLog log = logs.get(queryId);
+        return log != null ? log.lastSeq() : 0;
+    }
+
+    @Override
+    public Map<String, List<Entry>> readBlocking(Map<String, Long> cursors, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (signal) {
+            while (true) {
+                // Appends notify under the same lock, so nothing is missed between the scan and the wait
+                Map<String, List<Entry>> entries = new HashMap<>();
+                for (Map.Entry<String, Long> cursor : cursors.entrySet()) {
+                    List<Entry> pending = read(cursor.getKey(), cursor.getValue(), 0);
+                    if (!pending.isEmpty()) {
+                        entries.put(cursor.getKey(), pending);
+                    }
+                }
+                if (!entries.isEmpty()) {
+                    return entries;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (woken || remaining <= 0) {
+                    woken = false;
+                    return Collections.emptyMap();
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(signal, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return Collections.emptyMap();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void wakeReaders() {
+        synchronized (signal) {
+            woken = true;
+            signal.notifyAll();
+        }
+    }
+
+    @Override
+    public void release(String queryId, Duration retention) {
+        // Results live only in the query's log, which just expires sooner
+        QueryLog log = logs.get(queryId);
+        if (log != null) {
+            log.expireAfter(retention.toNanos());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        evictor.shutdownNow();
+    }
+
+    private void evictExpired() {
+        long now = System.nanoTime();
+        logs.values().removeIf(log -> log.isExpired(now));
+    }
+
+    /**
+     * Bounded log of one query: sequence numbers keep growing while the oldest entries are overwritten.
+     */
+    private static final class QueryLog {
+        private final byte[][] ring;
+        private long lastSeq;
+        private long expiresAt;
+
+        private QueryLog(int capacity) {
+            this.ring = new byte[capacity][];
+        }
+
+        private synchronized void append(byte[] payload) {
+            lastSeq++;
+            ring[(int) ((lastSeq - 1) % ring.length)] = payload;
+            expiresAt = System.nanoTime() + TTL_NANOS;
+        }
+
+        private synchronized List<Entry> read(long afterSeq, int maxCount) {
+            long first = Math.max(afterSeq + 1, lastSeq - ring.length + 1);
+            if (first > lastSeq) {
+                return Collections.emptyList();
+            }
+            long last = maxCount > 0 ? Math.min(lastSeq, first + maxCount - 1) : lastSeq;
+            List<Entry> entries = new ArrayList<>((int) (last - first + 1));
+            for (long seq = Math.max(first, 1); seq <= last; seq++) {
+                entries.add(new Entry(seq, ring[(int) ((seq - 1) % ring.length)]));
+            }
+            return entries;
+        }
+
+        private synchronized long lastSeq() {
+            return lastSeq;
+        }
+
+        private synchronized void expireAfter(long nanos) {
+            expiresAt = System.nanoTime() + nanos;
+        }
+
+        private synchronized boolean isExpired(long now) {
+            return now - expiresAt > 0;
+        }
+    }
+}
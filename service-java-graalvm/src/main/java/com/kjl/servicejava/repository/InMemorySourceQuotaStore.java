@@ -0,0 +1,40 @@
+package com.kjl.servicejava.repository;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Single-node {@link SourceQuotaStore} (flight.store=memory): the same token buckets, kept in this JVM.
+ */
+@Repository
+@ConditionalOnProperty(name = "flight.store", havingValue = "memory")
+public class InMemorySourceQuotaStore implements SourceQuotaStore {
+    private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    @Override
+    public Grant take(String source, int permits, double ratePerSecond, long burst) {
+        return buckets.computeIfAbsent(source, s -> new Bucket(burst)).take(permits, ratePerSecond / 1_000_000_000, burst);
+    }
+
+    private static final class Bucket {
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        private Bucket(long burst) {
+            this.tokens = burst;
+        }
+
+        private synchronized Grant take(int permits, double ratePerNano, long burst) {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - refilledAt) * ratePerNano);
+            refilledAt = now;
+            int granted = (int) Math.min(permits, Math.floor(tokens));
+            tokens -= granted;
+            long retryAfterMillis = granted == 0 ? (long) Math.ceil((1 - tokens) / ratePerNano / 1_000_000) : 0;
+            return new Grant(granted, retryAfterMillis);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.kjl.servicejava.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * {@link SourceQuotaStore} on Redis: each source's bucket is a hash {@code source_quota:{source}} (tokens, last
+ * refill in ms) that one Lua script refills and takes from atomically, on the Redis clock so nodes' clocks do not
+ * matter. An idle bucket expires once it would have refilled completely.
+ */
+@Repository
+@ConditionalOnProperty(name = "flight.store", havingValue = "redis", matchIfMissing = true)
+public class RedisSourceQuotaStore implements SourceQuotaStore {
+    // ARGV: rate per second, burst, requested tokens. Returns {granted, retry after ms}
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> TAKE_SCRIPT = new DefaultRedisScript<>(
+        "local time = redis.call('TIME')\n" +
+        "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)\n" +
+        "local rate = tonumber(ARGV[1]) / 1000\n" +
+        "local burst = tonumber(ARGV[2])\n" +
+        "local requested = tonumber(ARGV[3])\n" +
+        "local bucket = redis.call('HMGET', KEYS[1], 'tokens', 'ts')\n" +
+        "local tokens = tonumber(bucket[1]) or burst\n" +
+        "local ts = tonumber(bucket[2]) or now\n" +
+        "tokens = math.min(burst, tokens + math.max(0, now - ts) * rate)\n" +
+        "local granted = math.min(requested, math.floor(tokens))\n" +
+        "tokens = tokens - granted\n" +
+        "redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', now)\n" +
+        "redis.call('PEXPIRE', KEYS[1], math.ceil(burst / rate) + 1000)\n" +
+        "local retry = 0\n" +
+        "if granted == 0 then retry = math.ceil((1 - tokens) / rate) end\n" +
+        "return {granted, retry}", List.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    public RedisSourceQuotaStore(RedisTemplate<String, String> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public Grant take(String source, int permits, double ratePerSecond, long burst) {
+        List<?> result = redisTemplate.execute(TAKE_SCRIPT, List.of(quotaKey(source)),
+            Double.toString(ratePerSecond), Long.toString(burst), Integer.toString(permits));
+        if (result == null || result.size() < 2) {
+            return new Grant(0, 1000);
+        }
+        return new Grant(((Number) result.get(0)).intValue(), ((Number) result.get(1)).longValue());
+    }
+
+    private static String quotaKey(String source) {
+        return "source_quota:" + source;
+    }
+}
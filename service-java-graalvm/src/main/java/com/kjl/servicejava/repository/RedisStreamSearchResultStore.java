@@ -0,0 +1,192 @@
+package com.kjl.servicejava.repository;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStreamCommands.XAddOptions;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * {@link SearchResultStore} on Redis Streams.
+ * Each query is one stream whose entry IDs are {@code <seq>-0}, so sequence numbers double as XRANGE/XREAD cursors.
+ * Writes go through the batching {@link FlightResultWriter}. Live reads use a single XREAD BLOCK over every
+ * followed stream plus a node-local wake stream, on one connection kept open for the reader thread.
+ */
+@Repository
+@ConditionalOnProperty(name = "flight.store", havingValue = "redis", matchIfMissing = true)
+public class RedisStreamSearchResultStore implements SearchResultStore {
+    private static final byte[] FIELD = "d".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] WAKE_VALUE = {'1'};
+    private static final int STREAM_PREFIX_LENGTH = FlightResultWriter.streamKey("").length();
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final FlightResultWriter flightResultWriter;
+    private final byte[] wakeKey;
+    // Only the reader thread opens it; shutdown closes it from another thread to end a pending XREAD BLOCK
+    private volatile RedisConnection blockingConnection;
+    private volatile boolean closed;
+    private String wakeCursor = "0-0";
+
+    @Autowired
+    public RedisStreamSearchResultStore(RedisTemplate<String, String> redisTemplate, FlightResultWriter flightResultWriter) {
+        this.redisTemplate = redisTemplate;
+        this.flightResultWriter = flightResultWriter;
+        this.wakeKey = ("flight_stream_wake:" + UUID.randomUUID()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void appendResult(String queryId, String source, int index, byte[] resultJson) {
+        flightResultWriter.appendResult(queryId, source, index, resultJson);
+    }
+
+    @Override
+    public void append(String queryId, byte[] messageJson) {
+        flightResultWriter.append(queryId, messageJson);
+    }
+
+    @Override
+    public List<Entry> read(String queryId, long afterSeq, int maxCount) {
+        byte[] key = streamKey(queryId);
+        Range<String> range = Range.rightUnbounded(Range.Bound.inclusive((afterSeq + 1) + "-0"));
+        Limit limit = maxCount > 0 ? Limit.limit().count(maxCount) : Limit.unlimited();
+        List<ByteRecord> records = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+            connection.streamCommands().xRange(key, range, limit));
+        return toEntries(records);
+    }
+
+    @Override
+    public long lastSeq(String queryId) {
+        byte[] key = streamKey(queryId);
+        List<ByteRecord> records = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+            connection.streamCommands().xRevRange(key, Range.unbounded(), Limit.limit().count(1)));
+        return records == null || records.isEmpty() ? 0 : records.get(0).getId().getTimestamp();
+    }
+
+    @Override
+    public Map<String, List<Entry>> readBlocking(Map<String, Long> cursors, Duration timeout) {
+        List<StreamOffset<byte[]>> offsets = new ArrayList<>(cursors.size() + 1);
+        offsets.add(StreamOffset.create(wakeKey, ReadOffset.from(wakeCursor)));
+        for (Map.Entry<String, Long> cursor : cursors.entrySet()) {
+            offsets.add(StreamOffset.create(streamKey(cursor.getKey()), ReadOffset.from(cursor.getValue() + "-0")));
+        }
+
+        List<ByteRecord> records;
+        try {
+            RedisConnection connection = blockingConnection;
+            if (connection == null) {
+                if (closed) {
+                    return Collections.emptyMap();
+                }
+                connection = redisTemplate.getRequiredConnectionFactory().getConnection();
+                blockingConnection = connection;
+                if (closed) {
+                    // Shut down while connecting
+                    closeBlockingConnection();
+                    return Collections.emptyMap();
+                }
+            }
+            // Blocking XREAD runs on the connection's dedicated (non-shared) channel, reused across calls
+            records = connection.streamCommands().xRead(
+                StreamReadOptions.empty().block(timeout), offsets.toArray(new StreamOffset[0]));
+        } catch (RuntimeException e) {
+            closeBlockingConnection();
+            if (closed) {
+                return Collections.emptyMap();
+            }
+            throw e;
+        }
+        if (records == null || records.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, List<Entry>> entries = new HashMap<>();
+        for (ByteRecord record : records) {
+            if (Arrays.equals(record.getStream(), wakeKey)) {
+                wakeCursor = record.getId().getValue();
+                continue;
+            }
+            String stream = new String(record.getStream(), StandardCharsets.UTF_8);
+            String queryId = stream.substring(STREAM_PREFIX_LENGTH);
+            entries.computeIfAbsent(queryId, id -> new ArrayList<>()).add(toEntry(record));
+        }
+        return entries;
+    }
+
+    @Override
+    public void wakeReaders() {
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.streamCommands().xAdd(MapRecord.create(wakeKey, Map.of(FIELD, WAKE_VALUE)), XAddOptions.maxlen(16));
+            return connection.keyCommands().expire(wakeKey, Duration.ofDays(1).toSeconds());
+        });
+    }
+
+    @Override
+    public void release(String queryId, Duration retention) {
+        flightResultWriter.release(queryId, retention);
+    }
+
+    /**
+     * Closes the reader's connection right away (no lock is shared with the reader), which ends a pending
+     * XREAD BLOCK; later reads return nothing.
+     */
+    @PreDestroy
+    public void shutdown() {
+        closed = true;
+        closeBlockingConnection();
+    }
+
+    private void closeBlockingConnection() {
+        RedisConnection connection = blockingConnection;
+        blockingConnection = null;
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (RuntimeException e) {
+                // Connection is already broken
+            }
+        }
+    }
+
+    private static byte[] streamKey(String queryId) {
+        return FlightResultWriter.streamKey(queryId).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<Entry> toEntries(List<ByteRecord> records) {
+        if (records == null || records.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Entry> entries = new ArrayList<>(records.size());
+        for (ByteRecord record : records) {
+            entries.add(toEntry(record));
+        }
+        return entries;
+    }
+
+    private static Entry toEntry(ByteRecord record) {
+        byte[] payload = null;
+        for (Map.Entry<byte[], byte[]> field : record.getValue().entrySet()) {
+            payload = field.getValue();
+        }
+        return new Entry(record.getId().getTimestamp(), payload);
+    }
+}
@@ -0,0 +1,63 @@
+package com.kjl.servicejava.repository;
+
+import java.time.Duration;
+
+/**
+ * Which node runs each search, and the control channel that reaches that node.
+ * The node starting a search claims it for a lease that outlasts the search deadline, so an owner that dies
+ * without releasing it stops being reported once the lease runs out. Control messages (cancels) are
+ * addressed to a node and handed to the listener registered on that node.
+ * Selected with flight.store: redis (shared by every node, default) or memory (single node).
+ */
+public interface SearchOwnershipRegistry {
+
+    /** Control operation: stop the search and end its log as cancelled. */
+    String CANCEL = "cancel";
+
+    /**
+     * Receives control messages addressed to this node.
+     */
+    interface Listener {
+        /**
+         * @param argument operation argument (e.g. the cancelling client's token), or null
+         */
+        void onControl(String operation, String queryId, String argument);
+    }
+
+    /**
+     * ID of this node, stable for the life of the process.
+     */
+    String getNodeId();
+
+    /**
+     * Next generation of a search key, unique across every node sharing this registry. Each run of a search gets a
+     * new generation, from which its query ID is derived.
+     */
+    long nextGeneration(String searchKey);
+
+    /**
+     * Records this node as the owner of a search for {@code lease}.
+     */
+    void claim(String queryId, Duration lease);
+
+    /**
+     * Drops this node's claim on a search; a claim taken over by another node is left alone.
+     */
+    void release(String queryId);
+
+    /**
+     * Node currently owning a search, or null if none holds a live lease.
+     */
+    String getOwner(String queryId);
+
+    /**
+     * Sends a control message with an optional argument to a node. Delivery is best effort: a node that is gone no
+     * longer owns anything.
+     */
+    void send(String nodeId, String operation, String queryId, String argument);
+
+    /**
+     * Registers the listener for control messages addressed to this node.
+     */
+    void listen(Listener listener);
+}
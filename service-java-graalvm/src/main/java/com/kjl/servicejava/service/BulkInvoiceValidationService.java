@@ -0,0 +1,270 @@
+package com.kjl.servicejava.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.kjl.servicejava.dto.ValidationResponseBuilder;
+import com.kjl.servicejava.model.InvoiceValidationResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Validates a stream of invoices (NDJSON, or a JSON array) in parallel and writes one NDJSON result per invoice.
+ * Invoices are read one at a time and at most max-in-flight of them are queued or validating per request,
+ * so memory stays flat regardless of the upload size.
+ */
+@Service
+public class BulkInvoiceValidationService {
+    public static final String NDJSON = "application/x-ndjson";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InvoiceValidationService invoiceValidationService;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter responseWriter;
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final int maxLineBytes;
+
+    @Autowired
+    public BulkInvoiceValidationService(InvoiceValidationService invoiceValidationService, ObjectMapper objectMapper,
+                                        @Qualifier("invoiceValidationExecutor") ExecutorService executor,
+                                        @Value("${invoice.bulk.max-in-flight:256}") int maxInFlight,
+                                        @Value("${invoice.bulk.max-line-bytes:1048576}") int maxLineBytes) {
+        this.invoiceValidationService = invoiceValidationService;
+        this.objectMapper = objectMapper;
+        this.responseWriter = objectMapper.writerFor(InvoiceValidationResponse.class);
+        this.executor = executor;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.maxLineBytes = maxLineBytes;
+    }
+
+    /**
+     * Validates every invoice in the input and writes the results to the output as NDJSON.
+     * Each result carries the invoice's zero-based "index"; with ordered=false results are written as they finish.
+     */
+    public void validate(InputStream in, OutputStream out, boolean ordered) throws IOException {
+        PushbackInputStream input = new PushbackInputStream(in, 1);
+        Pipeline pipeline = new Pipeline(out, ordered);
+        try {
+            if (firstNonWhitespace(input) == '[') {
+                readArray(input, pipeline);
+            } else {
+                readLines(input, pipeline);
+            }
+            pipeline.finish();
+        } finally {
+            pipeline.cancelPending();
+        }
+    }
+
+    /**
+     * Splits NDJSON into lines without tokenizing them; each line is parsed on the validation pool.
+     */
+    private void readLines(InputStream input, Pipeline pipeline) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        boolean tooLong = false;
+        int n;
+        while ((n = input.read(buffer)) != -1) {
+            int start = 0;
+            for (int i = 0; i < n; i++) {
+                if (buffer[i] == '\n') {
+                    tooLong = append(line, buffer, start, i - start, tooLong);
+                    submitLine(pipeline, line, tooLong);
+                    line.reset();
+                    tooLong = false;
+                    start = i + 1;
+                }
+            }
+            tooLong = append(line, buffer, start, n - start, tooLong);
+        }
+        submitLine(pipeline, line, tooLong);
+    }
+
+    private boolean append(ByteArrayOutputStream line, byte[] buffer, int offset, int length, boolean tooLong) {
+        if (tooLong || line.size() + length > maxLineBytes) {
+            return true;
+        }
+        line.write(buffer, offset, length);
+        return false;
+    }
+
+    private void submitLine(Pipeline pipeline, ByteArrayOutputStream line, boolean tooLong) throws IOException {
+        if (tooLong) {
+            pipeline.submitError("Invoice exceeds the maximum size of " + maxLineBytes + " bytes");
+            return;
+        }
+        byte[] invoice = line.toByteArray();
+        if (!isBlank(invoice)) {
+            pipeline.submit(invoice);
+        }
+    }
+
+    /**
+     * Copies each array element out of the stream as raw bytes; binding happens on the validation pool.
+     * A syntax error ends the upload since the array cannot be resynchronized.
+     */
+    private void readArray(InputStream input, Pipeline pipeline) throws IOException {
+        try (JsonParser parser = objectMapper.createParser(input)) {
+            parser.nextToken();
+            while (parser.nextToken() != null && !parser.hasToken(JsonToken.END_ARRAY)) {
+                ByteArrayOutputStream element = new ByteArrayOutputStream();
+                try (JsonGenerator generator = objectMapper.createGenerator(element)) {
+                    generator.copyCurrentStructure(parser);
+                }
+                pipeline.submit(element.toByteArray());
+            }
+        } catch (JsonProcessingException e) {
+            pipeline.submitError("Invalid JSON format: " + e.getOriginalMessage());
+        }
+    }
+
+    private static int firstNonWhitespace(PushbackInputStream input) throws IOException {
+        int b;
+        while ((b = input.read()) != -1) {
+            if (!Character.isWhitespace(b)) {
+                input.unread(b);
+                return b;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isBlank(byte[] bytes) {
+        for (byte b : bytes) {
+            if (!Character.isWhitespace(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] encode(long index, InvoiceValidationResponse response) throws IOException {
+        response.setIndex(index);
+        return responseWriter.writeValueAsBytes(response);
+    }
+
+    private InvoiceValidationResponse errorResponse(String error) {
+        return ValidationResponseBuilder.create()
+            .isValid(false)
+            .withError(error)
+            .build();
+    }
+
+    /**
+     * Per-request bounded window of submitted invoices. Runs on the request thread: submitting blocks on the
+     * oldest (ordered) or first finished (unordered) result once the window is full, and finished results are
+     * written opportunistically after every submit.
+     */
+    private final class Pipeline {
+        private final OutputStream out;
+        private final boolean ordered;
+        private final ExecutorCompletionService<byte[]> completion;
+        private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+        private long nextIndex = 0;
+
+        private Pipeline(OutputStream out, boolean ordered) {
+            this.out = out;
+            this.ordered = ordered;
+            this.completion = ordered ? null : new ExecutorCompletionService<>(executor);
+        }
+
+        void submit(byte[] invoice) throws IOException {
+            long index = nextIndex++;
+            submitTask(index, () -> encode(index, invoiceValidationService.validateInvoice(invoice)));
+        }
+
+        void submitError(String error) throws IOException {
+            long index = nextIndex++;
+            submitTask(index, () -> encode(index, errorResponse(error)));
+        }
+
+        void finish() throws IOException {
+            while (!pending.isEmpty()) {
+                writeNext(true);
+            }
+            out.flush();
+        }
+
+        void cancelPending() {
+            for (Future<byte[]> future : pending) {
+                future.cancel(true);
+            }
+            pending.clear();
+        }
+
+        private void submitTask(long index, Callable<byte[]> task) throws IOException {
+            if (pending.size() >= maxInFlight) {
+                writeNext(true);
+            }
+            Callable<byte[]> guarded = () -> {
+                try {
+                    return task.call();
+                } catch (Exception e) {
+                    return encode(index, errorResponse("Validation failed: " + e.getMessage()));
+                }
+            };
+            pending.add(ordered ? executor.submit(guarded) : completion.submit(guarded));
+            while (writeNext(false)) {
+                // drain whatever already finished
+            }
+        }
+
+        /**
+         * Writes one finished result, waiting for it if {@code block} is set. Returns false if none was ready.
+         */
+        private boolean writeNext(boolean block) throws IOException {
+            Future<byte[]> next;
+            try {
+                if (ordered) {
+                    next = pending.peek();
+                    if (next == null || (!block && !next.isDone())) {
+                        return false;
+                    }
+                    if (!next.isDone()) {
+                        out.flush();
+                    }
+                    pending.poll();
+                } else {
+                    next = completion.poll();
+                    if (next == null) {
+                        if (!block || pending.isEmpty()) {
+                            return false;
+                        }
+                        out.flush();
+                        next = completion.take();
+                    }
+                    pending.remove(next);
+                }
+                out.write(next.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Bulk validation interrupted");
+            } catch (ExecutionException e) {
+                throw new IOException("Bulk validation task failed", e.getCause());
+            }
+            out.write('\n');
+            return true;
+        }
+    }
+}
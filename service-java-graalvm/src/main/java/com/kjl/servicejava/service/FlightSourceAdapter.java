@@ -0,0 +1,63 @@
+package com.kjl.servicejava.service;
+
+import com.kjl.servicejava.model.FlightResult;
+
+/**
+ * One upstream flight provider (kiwi, trip, 12go, ...).
+ * {@link #search} blocks the calling (virtual) thread while results stream in and hands each to the sink as soon as
+ * it arrives. It must stop promptly when the thread is interrupted (source timeout, search deadline or cancel) and
+ * throws if the provider failed, which counts against the source's circuit breaker.
+ */
+public interface FlightSourceAdapter {
+
+    /**
+     * Source name, also the "source" of every result it returns.
+     */
+    String getName();
+
+    void search(Request request, Sink sink) throws Exception;
+
+    /**
+     * Receives a source's results as they arrive.
+     */
+    interface Sink {
+        /**
+         * Number of results the source is going to return, when it announces it up front.
+         */
+        default void expect(int results) {
+        }
+
+        /**
+         * Takes one result; returns false once no more results are wanted.
+         */
+        boolean accept(FlightResult result);
+    }
+
+    /**
+     * Search parameters sent to every source.
+     */
+    final class Request {
+        private final String from;
+        private final String to;
+        private final String tripType;
+        private final String departureDate;
+        private final String returnDate;
+        private final int pax;
+
+        public Request(String from, String to, String tripType, String departureDate, String returnDate, int pax) {
+            this.from = from;
+            this.to = to;
+            this.tripType = tripType;
+            this.departureDate = departureDate;
+            this.returnDate = returnDate;
+            this.pax = pax;
+        }
+
+        public String getFrom() { return from; }
+        public String getTo() { return to; }
+        public String getTripType() { return tripType; }
+        public String getDepartureDate() { return departureDate; }
+        public String getReturnDate() { return returnDate; }
+        public int getPax() { return pax; }
+    }
+}
@@ -0,0 +1,159 @@
+package com.kjl.servicejava.service;
+
+import com.kjl.servicejava.util.FlightResultCodec;
+import com.kjl.servicejava.util.LatencyDistribution;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Upstream sources every search fans out to (flight.sources.names), as adapters of the configured mode:
+ * "simulated" (default) generates results in-process, "http" calls each source over HTTP at flight.sources.base-url.
+ * Also holds the stub provider of each source, which simulated mode uses directly and the stub source server
+ * answers with; per-source settings are
+ * flight.sources.{name}.timeout-ms and flight.sources.stub.{name}.*.
+ */
+@Component
+public class FlightSources {
+    private final Environment environment;
+    private final SourceLatencyStats sourceLatencyStats;
+    private final Duration defaultTimeout;
+    private final Map<String, FlightSourceAdapter> adapters = new LinkedHashMap<>();
+    private final Map<String, SimulatedFlightSource> stubs = new LinkedHashMap<>();
+    private final Map<String, Duration> timeouts = new LinkedHashMap<>();
+    private final String mode;
+    private final boolean adaptiveTimeouts;
+    private final double adaptiveQuantile;
+    private final double adaptiveFactor;
+    private final Duration adaptiveMinTimeout;
+
+    @Autowired
+    public FlightSources(Environment environment,
+                         FlightResultCodec flightResultCodec,
+                         SourceLatencyStats sourceLatencyStats,
+                         SourceRateLimiter sourceRateLimiter,
+                         @Qualifier("flightSourceHttpClient") HttpClient httpClient,
+                         @Value("${flight.sources.mode:simulated}") String mode,
+                         @Value("${flight.sources.names:kiwi,trip,12go}") String[] names,
+                         @Value("${flight.sources.base-url:http://localhost:${server.port:8080}/stub/sources}") String baseUrl,
+                         @Value("${flight.search.source-timeout-ms:15000}") long sourceTimeoutMillis,
+                         @Value("${flight.sources.hedge.quantile:0.95}") double hedgeQuantile,
+                         @Value("${flight.sources.hedge.min-delay-ms:50}") long minHedgeDelayMillis,
+                         @Value("${flight.sources.adaptive-timeout.enabled:true}") boolean adaptiveTimeouts,
+                         @Value("${flight.sources.adaptive-timeout.quantile:0.99}") double adaptiveQuantile,
+                         @Value("${flight.sources.adaptive-timeout.factor:1.5}") double adaptiveFactor,
+                         @Value("${flight.sources.adaptive-timeout.min-ms:1000}") long adaptiveMinTimeoutMillis) {
+        this.environment = environment;
+        this.sourceLatencyStats = sourceLatencyStats;
+        this.adaptiveTimeouts = adaptiveTimeouts;
+        this.adaptiveQuantile = adaptiveQuantile;
+        this.adaptiveFactor = adaptiveFactor;
+        this.adaptiveMinTimeout = Duration.ofMillis(adaptiveMinTimeoutMillis);
+        this.defaultTimeout = Duration.ofMillis(sourceTimeoutMillis);
+        this.mode = mode.trim().toLowerCase();
+
+        for (String rawName : names) {
+            String name = rawName.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            Duration timeout = Duration.ofMillis(environment.getProperty(
+                "flight.sources." + name + ".timeout-ms", Long.class, sourceTimeoutMillis));
+            timeouts.put(name, timeout);
+            SimulatedFlightSource stub = new SimulatedFlightSource(name, flightResultCodec,
+                stubLatency(name, "first-delay", "fixed:0"),
+                stubLatency(name, "result-delay", "uniform:10-710"),
+                environment.getProperty("flight.sources.stub." + name + ".error-rate", Double.class, 0.0));
+            stubs.put(name, stub);
+
+            if ("http".equals(this.mode)) {
+                // A hedge is an extra upstream call: only sent with a spare quota permit
+                adapters.put(name, new HttpFlightSource(name, baseUrl, httpClient, flightResultCodec, sourceLatencyStats,
+                    timeout, hedgeQuantile, Duration.ofMillis(minHedgeDelayMillis), () -> sourceRateLimiter.tryAcquire(name)));
+            } else {
+                adapters.put(name, stub);
+            }
+        }
+        System.out.println("Flight sources (" + this.mode + "): " + adapters.keySet());
+    }
+
+    private LatencyDistribution stubLatency(String name, String setting, String defaultSpec) {
+        String spec = environment.getProperty("flight.sources.stub." + name + "." + setting,
+            environment.getProperty("flight.sources.stub." + setting, defaultSpec));
+        return LatencyDistribution.parse(spec);
+    }
+
+    public List<FlightSourceAdapter> getAdapters() {
+        return Collections.unmodifiableList(new ArrayList<>(adapters.values()));
+    }
+
+    public String[] getNames() {
+        return adapters.keySet().toArray(new String[0]);
+    }
+
+    /**
+     * Per-source timeout, flight.sources.{name}.timeout-ms or else flight.search.source-timeout-ms.
+     */
+    public Duration getTimeout(String source) {
+        return timeouts.getOrDefault(source, defaultTimeout);
+    }
+
+    /**
+     * Timeout for the next call to a source, derived from its recent completion times: factor times their
+     * adaptive-timeout quantile, at least adaptive-timeout.min-ms and at most the configured timeout. A source that
+     * is usually fast is thus cut off well before a degraded call would reach its configured timeout; without enough
+     * recent samples (or with adaptive timeouts off) the configured timeout applies.
+     */
+    public Duration getAdaptiveTimeout(String source) {
+        Duration configured = getTimeout(source);
+        if (!adaptiveTimeouts) {
+            return configured;
+        }
+        long percentile = sourceLatencyStats.getCompletionPercentile(source, adaptiveQuantile);
+        if (percentile < 0) {
+            return configured;
+        }
+        Duration adaptive = Duration.ofNanos((long) (percentile * adaptiveFactor));
+        if (adaptive.compareTo(adaptiveMinTimeout) < 0) {
+            adaptive = adaptiveMinTimeout;
+        }
+        return adaptive.compareTo(configured) < 0 ? adaptive : configured;
+    }
+
+    /**
+     * Stub provider of a source for the stub source server, or null for an unknown source.
+     */
+    public SimulatedFlightSource getStub(String source) {
+        return stubs.get(source);
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    /**
+     * Hedged requests per HTTP source and how many of them the hedge won, for monitoring.
+     */
+    public Map<String, Object> getHedgeStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        adapters.forEach((name, adapter) -> {
+            if (adapter instanceof HttpFlightSource httpSource) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("hedged", httpSource.getHedgedRequests());
+                entry.put("hedge_wins", httpSource.getHedgeWins());
+                stats.put(name, entry);
+            }
+        });
+        return stats;
+    }
+}
@@ -0,0 +1,339 @@
+package com.kjl.servicejava.service;
+
+import com.kjl.servicejava.model.FlightResult;
+import com.kjl.servicejava.repository.SearchResultStore;
+import com.kjl.servicejava.util.FlightResultCodec;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event-driven long polling.
+ * Requests without new results are parked as {@link DeferredResult}s, so no servlet thread or Redis call is
+ * spent while a poller waits. Parked requests are answered from the messages {@link QueryFanoutHub}'s blocking
+ * reader delivers as the query's stream advances, and timed out by a single scheduler thread; neither reads the store.
+ * {@code last_seen_index} is the sequence number of the last message the client has seen.
+ * Responses carry the progress stamped on the stored messages by {@link SearchLifecycle}; a completed, expired or
+ * cancelled response ends the search for the client.
+ */
+@Service
+public class LongPollService {
+    public static final long TIMEOUT_MILLIS = 5 * 60 * 1000; // 5 minutes
+    private static final int NON_BATCH_READ = 8;
+    private static final byte[] RESULTS_OPEN = ",\"results\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RESULTS_CLOSE = "]}".getBytes(StandardCharsets.UTF_8);
+
+    private final SearchResultStore searchResultStore;
+    private final QueryFanoutHub queryFanoutHub;
+    private final FlightResultCodec flightResultCodec;
+    private final ConcurrentMap<String, QueryWaiters> parked = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor timeouts;
+
+    @Autowired
+    public LongPollService(SearchResultStore searchResultStore, QueryFanoutHub queryFanoutHub, FlightResultCodec flightResultCodec) {
+        this.searchResultStore = searchResultStore;
+        this.queryFanoutHub = queryFanoutHub;
+        this.flightResultCodec = flightResultCodec;
+        this.timeouts = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "longpoll-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Answered polls cancel their timeout; drop it from the queue instead of keeping it for 5 minutes
+        this.timeouts.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Returns the next result after {@code lastSeenIndex}, either immediately or once it is published.
+     */
+    public DeferredResult<ResponseEntity<byte[]>> poll(String queryId, int lastSeenIndex) {
+        return poll(queryId, lastSeenIndex, false, 0);
+    }
+
+    /**
+     * Returns the results after {@code lastSeenIndex}, either immediately or once one is published.
+     * In batch mode every pending result (at most {@code maxBatch} when positive) is returned in one response,
+     * otherwise only the next one.
+     */
+    public DeferredResult<ResponseEntity<byte[]>> poll(String queryId, int lastSeenIndex, boolean batch, int maxBatch) {
+        // Servlet-level timeout is only a safety net, the timeout scheduler answers first
+        DeferredResult<ResponseEntity<byte[]>> result = new DeferredResult<>(TIMEOUT_MILLIS + 10000L);
+        Waiter waiter = new Waiter(queryId, lastSeenIndex, batch, maxBatch, result);
+
+        // Read only the entries this response can carry, along with the last message the client has seen
+        int limit = waiter.limit();
+        boolean withSeen = lastSeenIndex > 0;
+        List<SearchResultStore.Entry> read = searchResultStore.read(queryId, withSeen ? lastSeenIndex - 1 : 0,
+            withSeen && limit > 0 ? limit + 1 : limit);
+        if (withSeen && !read.isEmpty() && read.get(0).getSeq() == lastSeenIndex) {
+            waiter.seen = read.get(0).getPayload();
+        }
+        List<SearchResultStore.Entry> results = pending(waiter, read);
+        if (results.isEmpty() && !read.isEmpty() && lastSeq(read) > lastSeenIndex) {
+            results = readPending(waiter, lastSeq(read));
+        }
+        if (!results.isEmpty()) {
+            result.setResult(buildResponse(waiter, results));
+            return result;
+        }
+
+        waiter.timeout = timeouts.schedule(() -> expire(waiter), TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        result.onCompletion(() -> release(waiter));
+        result.onTimeout(() -> expire(waiter));
+        park(waiter);
+
+        // A result may have been written between the first read and the subscription; from here on the
+        // fan-out delivers it
+        List<SearchResultStore.Entry> missed = readPending(waiter, lastSeenIndex);
+        if (!missed.isEmpty()) {
+            result.setResult(buildResponse(waiter, missed));
+        }
+        return result;
+    }
+
+    /**
+     * Reads the entries a response to the waiter carries after {@code afterSeq}, reading on past source messages
+     * a non-batch poll skips.
+     */
+    private List<SearchResultStore.Entry> readPending(Waiter waiter, long afterSeq) {
+        while (true) {
+            List<SearchResultStore.Entry> entries = searchResultStore.read(waiter.queryId, afterSeq, waiter.limit());
+            List<SearchResultStore.Entry> pending = pending(waiter, entries);
+            if (!pending.isEmpty() || entries.isEmpty() || waiter.batch) {
+                return pending;
+            }
+            afterSeq = lastSeq(entries);
+        }
+    }
+
+    /**
+     * The entries of {@code entries} a response to the waiter carries: those after its last seen index, at most
+     * max_batch of them in batch mode. A non-batch poll gets the first one that is not a source lifecycle message;
+     * those are only reported through the "sources" of the terminal message.
+     */
+    private List<SearchResultStore.Entry> pending(Waiter waiter, List<SearchResultStore.Entry> entries) {
+        int start = 0;
+        while (start < entries.size() && entries.get(start).getSeq() <= waiter.lastSeenIndex) {
+            start++;
+        }
+        if (!waiter.batch) {
+            while (start < entries.size() && "source".equals(flightResultCodec.peekType(entries.get(start).getPayload()))) {
+                start++;
+            }
+            return start < entries.size() ? entries.subList(start, start + 1) : List.of();
+        }
+        int end = waiter.maxBatch > 0 ? Math.min(entries.size(), start + waiter.maxBatch) : entries.size();
+        return entries.subList(start, end);
+    }
+
+    private static long lastSeq(List<SearchResultStore.Entry> entries) {
+        return entries.get(entries.size() - 1).getSeq();
+    }
+
+    private void park(Waiter waiter) {
+        parked.compute(waiter.queryId, (id, waiters) -> {
+            if (waiters == null) {
+                waiters = new QueryWaiters(id);
+                queryFanoutHub.subscribe(id, waiters);
+            }
+            waiters.waiters.add(waiter);
+            return waiters;
+        });
+    }
+
+    private void release(Waiter waiter) {
+        waiter.timeout.cancel(false);
+        parked.computeIfPresent(waiter.queryId, (id, waiters) -> {
+            waiters.waiters.remove(waiter);
+            if (!waiters.waiters.isEmpty()) {
+                return waiters;
+            }
+            queryFanoutHub.unsubscribe(id, waiters);
+            return null;
+        });
+    }
+
+    private void expire(Waiter waiter) {
+        // Timeout reached - send the progress of the last message the client has seen and ask it to keep polling
+        byte[] seenPayload = waiter.seen;
+        FlightResult seen = seenPayload != null ? decode(seenPayload) : null;
+        Map<String, Object> timeoutMsg = new LinkedHashMap<>();
+        timeoutMsg.put("type", "timeout");
+        timeoutMsg.put("progress", seen != null && seen.getProgress() != null ? seen.getProgress() : 0);
+        timeoutMsg.put("status", "searching");
+        timeoutMsg.put("message", "Search still in progress. Please continue polling.");
+        timeoutMsg.put("received_flights", seen != null && seen.getReceivedFlights() != null ? seen.getReceivedFlights() : 0);
+        if (seen != null && seen.getTotalExpected() != null) {
+            timeoutMsg.put("total_expected", seen.getTotalExpected());
+        }
+        timeoutMsg.put("should_continue", true);
+        timeoutMsg.put("timeout_seconds", TIMEOUT_MILLIS / 1000);
+        timeoutMsg.put("last_seen_index", waiter.lastSeenIndex);
+        waiter.result.setResult(json(timeoutMsg));
+    }
+
+    /**
+     * Answers every parked waiter of a query that the delivered messages cover, from the delivered bytes.
+     */
+    private void deliver(QueryWaiters waiters, List<SearchResultStore.Entry> entries) {
+        for (Waiter waiter : waiters.waiters) {
+            List<SearchResultStore.Entry> pending = pending(waiter, entries);
+            if (!pending.isEmpty()) {
+                waiter.result.setResult(buildResponse(waiter, pending));
+            }
+        }
+    }
+
+    private ResponseEntity<byte[]> buildResponse(Waiter waiter, List<SearchResultStore.Entry> entries) {
+        if (waiter.batch) {
+            return buildBatchResponse(entries);
+        }
+        // The stored message already carries its progress; only the cursor is added
+        SearchResultStore.Entry entry = entries.get(0);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+            .body(flightResultCodec.withFields(entry.getPayload(), "\"last_seen_index\":" + entry.getSeq()));
+    }
+
+    /**
+     * Builds one response carrying every entry in {@code entries}, with the progress of the last one.
+     * A completed, expired or cancelled entry ends the batch and becomes the response type.
+     * Stored results are copied into the "results" array as-is, without being parsed.
+     */
+    private ResponseEntity<byte[]> buildBatchResponse(List<SearchResultStore.Entry> entries) {
+        String type = "batch";
+        List<byte[]> flights = new ArrayList<>(entries.size());
+        byte[] last = null;
+        int cursor = 0;
+        int size = 0;
+        for (SearchResultStore.Entry entry : entries) {
+            cursor = (int) entry.getSeq();
+            last = entry.getPayload();
+            String entryType = flightResultCodec.peekType(last);
+            if (SearchLifecycle.isTerminal(entryType)) {
+                type = entryType;
+                break;
+            }
+            if (entryType == null) {
+                flights.add(last);
+                size += last.length + 1;
+            }
+        }
+
+        FlightResult progress = decode(last);
+        Map<String, Object> batchMsg = new LinkedHashMap<>();
+        batchMsg.put("type", type);
+        if (progress != null) {
+            batchMsg.put("progress", progress.getProgress());
+            batchMsg.put("status", progress.getStatus());
+            if (!"batch".equals(type)) {
+                batchMsg.put("message", progress.getMessage());
+                batchMsg.put("total_flights", progress.getTotalFlights());
+                batchMsg.put("sources", progress.getSources());
+            }
+            batchMsg.put("received_flights", progress.getReceivedFlights());
+            batchMsg.put("total_expected", progress.getTotalExpected());
+        }
+        batchMsg.values().removeIf(Objects::isNull);
+        batchMsg.put("last_seen_index", cursor);
+
+        // {<batch members>,"results":[<entry>,<entry>,...]}
+        byte[] header = flightResultCodec.encode(batchMsg);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(header.length + 16 + size);
+        out.write(header, 0, header.length - 1);
+        out.writeBytes(RESULTS_OPEN);
+        for (int i = 0; i < flights.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.writeBytes(flights.get(i));
+        }
+        out.writeBytes(RESULTS_CLOSE);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(out.toByteArray());
+    }
+
+    private FlightResult decode(byte[] payload) {
+        try {
+            return flightResultCodec.decode(payload);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private ResponseEntity<byte[]> json(Map<String, Object> body) {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(flightResultCodec.encode(body));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timeouts.shutdownNow();
+    }
+
+    /**
+     * Parked long poll request.
+     */
+    private static final class Waiter {
+        private final String queryId;
+        private final int lastSeenIndex;
+        private final boolean batch;
+        private final int maxBatch;
+        private final DeferredResult<ResponseEntity<byte[]>> result;
+        private volatile ScheduledFuture<?> timeout;
+        // Stored message at lastSeenIndex, for the progress of a timeout response
+        private volatile byte[] seen;
+
+        private Waiter(String queryId, int lastSeenIndex, boolean batch, int maxBatch,
+                       DeferredResult<ResponseEntity<byte[]>> result) {
+            this.queryId = queryId;
+            this.lastSeenIndex = lastSeenIndex;
+            this.batch = batch;
+            this.maxBatch = maxBatch;
+            this.result = result;
+        }
+
+        /**
+         * Number of messages to read for this waiter's response, 0 for the whole tail. A non-batch response
+         * carries one, but a few are read so that source messages can be skipped.
+         */
+        private int limit() {
+            if (!batch) {
+                return NON_BATCH_READ;
+            }
+            return Math.max(maxBatch, 0);
+        }
+    }
+
+    /**
+     * Waiters of one query, subscribed to the query's fan-out channel while any of them is parked.
+     */
+    private final class QueryWaiters implements QueryFanoutHub.Subscriber {
+        private final String queryId;
+        private final Set<Waiter> waiters = ConcurrentHashMap.newKeySet();
+
+        private QueryWaiters(String queryId) {
+            this.queryId = queryId;
+        }
+
+        @Override
+        public void onEntries(List<SearchResultStore.Entry> entries) {
+            deliver(this, entries);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.kjl.servicejava.service;
+
+import com.kjl.servicejava.model.FlightResult;
+import com.kjl.servicejava.util.FlightResultCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Server-side filtered / top-K views of a query's live results, one per subscriber.
+ * A view lets through only flight frames matching its filters (min_price, max_price, airlines, depart_after,
+ * depart_before). With top_k it keeps the K cheapest matching results in an ordered index: a result entering
+ * the view is sent as usual and the one it pushes out is announced with a "remove" frame. Control frames
+ * (source, completed, expired, cancelled) always pass. Each stored result is decoded once per frame for all views.
+ */
+@Service
+public class ResultViewService {
+    private static final String DECODED = "flight-result";
+
+    private final FlightResultCodec flightResultCodec;
+
+    @Autowired
+    public ResultViewService(FlightResultCodec flightResultCodec) {
+        this.flightResultCodec = flightResultCodec;
+    }
+
+    /**
+     * View parameters of a subscriber. Unparseable values are ignored.
+     */
+    public static final class Spec {
+        private Long minPrice;
+        private Long maxPrice;
+        private Set<String> airlines;
+        private LocalTime departAfter;
+        private LocalTime departBefore;
+        private Integer topK;
+
+        private Spec() {
+        }
+
+        /**
+         * Builds a spec from request parameters, or returns null if none of them is set.
+         * {@code airlines} is a comma-separated list; depart_after / depart_before are HH:mm (inclusive).
+         */
+        public static Spec parse(String minPrice, String maxPrice, String airlines,
+                                 String departAfter, String departBefore, String topK) {
+            Spec spec = new Spec();
+            spec.minPrice = parseLong(minPrice);
+            spec.maxPrice = parseLong(maxPrice);
+            spec.departAfter = parseTime(departAfter);
+            spec.departBefore = parseTime(departBefore);
+            Long k = parseLong(topK);
+            spec.topK = k != null && k > 0 ? (int) Math.min(k, Integer.MAX_VALUE) : null;
+            if (airlines != null && !airlines.isBlank()) {
+                spec.airlines = new HashSet<>();
+                for (String airline : airlines.split(",")) {
+                    if (!airline.isBlank()) {
+                        spec.airlines.add(airline.trim().toLowerCase(Locale.ROOT));
+                    }
+                }
+            }
+            boolean empty = spec.minPrice == null && spec.maxPrice == null && spec.airlines == null
+                && spec.departAfter == null && spec.departBefore == null && spec.topK == null;
+            return empty ? null : spec;
+        }
+
+        private boolean matches(FlightResult result) {
+            Long price = result.getPrice();
+            if ((minPrice != null || maxPrice != null) && price == null) {
+                return false;
+            }
+            if (minPrice != null && price < minPrice) {
+                return false;
+            }
+            if (maxPrice != null && price > maxPrice) {
+                return false;
+            }
+            if (airlines != null && (result.getAirline() == null
+                || !airlines.contains(result.getAirline().toLowerCase(Locale.ROOT)))) {
+                return false;
+            }
+            if (departAfter != null || departBefore != null) {
+                LocalTime departure = parseTime(result.getDepartureTime());
+                if (departure == null) {
+                    return false;
+                }
+                if (departAfter != null && departure.isBefore(departAfter)) {
+                    return false;
+                }
+                if (departBefore != null && departure.isAfter(departBefore)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static Long parseLong(String value) {
+            if (value == null || value.isBlank()) {
+                return null;
+            }
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private static LocalTime parseTime(String value) {
+            if (value == null || value.isBlank()) {
+                return null;
+            }
+            try {
+                return LocalTime.parse(value.trim());
+            } catch (DateTimeParseException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Wraps {@code downstream} in a view; returns it unchanged when {@code spec} is null.
+     */
+    public QueryFanoutHub.Subscriber view(QueryFanoutHub.Subscriber downstream, Spec spec) {
+        return spec == null ? downstream : new View(downstream, spec);
+    }
+
+    private FlightResult decode(QueryFanoutHub.Frame frame) {
+        return frame.getEncoded(DECODED, f -> {
+            try {
+                return flightResultCodec.decode(f.getResult());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * A result held in a top-K index.
+     */
+    private static final class Entry {
+        private final long seq;
+        private final long price;
+        private final FlightResult result;
+
+        private Entry(long seq, long price, FlightResult result) {
+            this.seq = seq;
+            this.price = price;
+            this.result = result;
+        }
+    }
+
+    private static final Comparator<Entry> BY_PRICE = Comparator.<Entry>comparingLong(e -> e.price)
+        .thenComparingLong(e -> e.seq);
+
+    /**
+     * Per-subscriber view state. Frames of a query are delivered one at a time, in order.
+     */
+    private final class View implements QueryFanoutHub.Subscriber {
+        private final QueryFanoutHub.Subscriber downstream;
+        private final Spec spec;
+        private final TreeSet<Entry> topK;
+
+        private View(QueryFanoutHub.Subscriber downstream, Spec spec) {
+            this.downstream = downstream;
+            this.spec = spec;
+            this.topK = spec.topK != null ? new TreeSet<>(BY_PRICE) : null;
+        }
+
+        @Override
+        public synchronized void onFrame(QueryFanoutHub.Frame frame) {
+            if (frame.getResult() == null) {
+                downstream.onFrame(frame);
+                return;
+            }
+            FlightResult result = decode(frame);
+            if (!spec.matches(result)) {
+                return;
+            }
+            if (topK == null) {
+                downstream.onFrame(frame);
+                return;
+            }
+
+            Entry entry = new Entry(frame.getSeq(), result.getPrice() != null ? result.getPrice() : Long.MAX_VALUE, result);
+            if (topK.size() >= spec.topK) {
+                Entry worst = topK.last();
+                if (BY_PRICE.compare(entry, worst) >= 0) {
+                    return;
+                }
+                topK.pollLast();
+                topK.add(entry);
+                downstream.onFrame(frame);
+                downstream.onFrame(removeFrame(frame.getSeq(), worst));
+                return;
+            }
+            topK.add(entry);
+            downstream.onFrame(frame);
+        }
+
+        private QueryFanoutHub.Frame removeFrame(long seq, Entry removed) {
+            Map<String, Object> message = new LinkedHashMap<>();
+            message.put("type", "remove");
+            message.put("seq", seq);
+            message.put("removed_seq", removed.seq);
+            message.put("source", removed.result.getSource());
+            message.put("flight_number", removed.result.getFlightNumber());
+            message.put("price", removed.result.getPrice());
+            return new QueryFanoutHub.Frame("remove", seq, flightResultCodec.encode(message), false);
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package com.kjl.servicejava.service;
+
+import com.kjl.servicejava.repository.SearchOwnershipRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-flight layer in front of {@link FlightSearchService}, keyed by the canonical search key.
+ * Concurrent identical searches attach to the run already in flight and share its query ID (and result stream).
+ * A completed run is served from cache for flight.search.cache.ttl-ms; for flight.search.cache.stale-ms after
+ * that it is still served while one background run revalidates it, and the new run is served once it completes.
+ * A run cut short by the search deadline (expired) only has partial results and is never served from cache.
+ * Upstream calls and stream writes therefore scale with distinct searches, not with users.
+ * Coalescing is per node: identical searches landing on different nodes run separately. Their query IDs derive
+ * from a generation counter shared through the {@link SearchOwnershipRegistry}, so runs never share a query ID.
+ * Each client attached to a run holds its own client token, so a run is only cancelled once every attached client
+ * has cancelled, however often each of them does. Cancels of a search started on another node are sent to that
+ * node through the {@link SearchOwnershipRegistry}, with their token, and counted there like local ones.
+ */
+@Service
+public class SearchCoalescingService {
+    private final FlightSearchService flightSearchService;
+    private final SearchOwnershipRegistry searchOwnershipRegistry;
+    private final long ttlMillis;
+    private final long staleMillis;
+    private final long stuckMillis;
+    private final double revalidateWeight;
+    private final ConcurrentMap<String, SearchEntry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Run> runs = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper;
+
+    @Autowired
+    public SearchCoalescingService(FlightSearchService flightSearchService,
+                                   SearchOwnershipRegistry searchOwnershipRegistry,
+                                   @Value("${flight.search.cache.ttl-ms:60000}") long ttlMillis,
+                                   @Value("${flight.search.cache.stale-ms:300000}") long staleMillis,
+                                   @Value("${flight.search.deadline-ms:30000}") long searchDeadlineMillis,
+                                   @Value("${flight.sources.quota.revalidate-weight:0.25}") double revalidateWeight) {
+        this.flightSearchService = flightSearchService;
+        this.searchOwnershipRegistry = searchOwnershipRegistry;
+        this.ttlMillis = ttlMillis;
+        this.staleMillis = staleMillis;
+        // A run that never reported back (e.g. rejected by the executor) stops being joined after this
+        this.stuckMillis = searchDeadlineMillis * 2;
+        this.revalidateWeight = revalidateWeight;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "search-cache-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sweeper.scheduleWithFixedDelay(this::sweep, 1, 1, TimeUnit.MINUTES);
+        searchOwnershipRegistry.listen(this::onControl);
+    }
+
+    /**
+     * How a search request was answered.
+     */
+    public enum Outcome {
+        /** A new run was started. */
+        STARTED,
+        /** Attached to an identical run still in flight. */
+        JOINED,
+        /** Served from a fresh cached run. */
+        CACHED,
+        /** Served from a stale cached run while a new run revalidates it. */
+        STALE
+    }
+
+    /**
+     * Query ID a client should stream from, how it was obtained, and the client's token for cancelling.
+     */
+    public static final class Ticket {
+        private final String queryId;
+        private final Outcome outcome;
+        private final String clientToken;
+
+        private Ticket(String queryId, Outcome outcome, String clientToken) {
+            this.queryId = queryId;
+            this.outcome = outcome;
+            this.clientToken = clientToken;
+        }
+
+        public String getQueryId() { return queryId; }
+        public Outcome getOutcome() { return outcome; }
+        /** Identifies the client among those attached to a run in flight; null for cached runs. */
+        public String getClientToken() { return clientToken; }
+    }
+
+    /**
+     * One run of a search under its own query ID.
+     */
+    private static final class Run {
+        private final String searchKey;
+        private final String queryId;
+        private final long startedAt;
+        private long finishedAt;
+        private boolean finished;
+        private boolean completed;
+        private boolean cancelled;
+        // Tokens of the attached clients; none for a background revalidation
+        private final Set<String> clients = new HashSet<>();
+
+        private Run(String searchKey, String queryId, long startedAt) {
+            this.searchKey = searchKey;
+            this.queryId = queryId;
+            this.startedAt = startedAt;
+        }
+
+        /**
+         * Attaches a new client and returns its token. Called with the monitor held.
+         */
+        private String attach() {
+            String token = UUID.randomUUID().toString();
+            clients.add(token);
+            return token;
+        }
+    }
+
+    /**
+     * Run currently served for a search key, and the run revalidating it, if any.
+     */
+    private static final class SearchEntry {
+        private Run served;
+        private Run revalidating;
+    }
+
+    public Ticket search(String from, String to, String tripType, String departureDate, String returnDate, int pax) {
+        String searchKey = FlightSearchService.searchKey(from, to, tripType, departureDate, returnDate, pax);
+        long now = System.currentTimeMillis();
+        Run[] started = new Run[1];
+
+        Ticket ticket = coalesce(searchKey, now, null, started);
+        if (ticket == null) {
+            // A run has to start: take its query ID from the shared counter with no lock held, then decide again,
+            // as an identical request may have started one meanwhile (the unused generation is simply skipped)
+            ticket = coalesce(searchKey, now, nextQueryId(searchKey, now), started);
+        }
+
+        if (started[0] != null) {
+            Run run = started[0];
+            flightSearchService.startSearch(run.queryId, from, to, tripType, departureDate, returnDate, pax,
+                state -> onFinished(run, state), () -> weight(run));
+        }
+        return ticket;
+    }
+
+    /**
+     * Answers a search from its entry, starting a run under {@code queryId} if one is needed. Returns null, changing
+     * nothing, if a run is needed but no query ID was given; a run started is stored in {@code started[0]}.
+     */
+    private Ticket coalesce(String searchKey, long now, String queryId, Run[] started) {
+        Ticket[] ticket = new Ticket[1];
+        entries.compute(searchKey, (key, entry) -> {
+            if (entry == null) {
+                entry = new SearchEntry();
+            }
+            Run served = entry.served;
+            synchronized (this) {
+                if ((served == null || !isServable(served, now))
+                    && entry.revalidating != null && isServable(entry.revalidating, now)) {
+                    // Too stale to serve, but its replacement is already running
+                    served = entry.revalidating;
+                    entry.served = served;
+                    entry.revalidating = null;
+                    ticket[0] = new Ticket(served.queryId, Outcome.JOINED, served.attach());
+                } else if (served == null || !isServable(served, now)) {
+                    if (queryId != null) {
+                        served = newRun(key, queryId, now);
+                        entry.served = served;
+                        entry.revalidating = null;
+                        started[0] = served;
+                        ticket[0] = new Ticket(served.queryId, Outcome.STARTED, served.attach());
+                    }
+                } else if (!served.finished) {
+                    ticket[0] = new Ticket(served.queryId, Outcome.JOINED, served.attach());
+                } else if (now - served.finishedAt < ttlMillis) {
+                    ticket[0] = new Ticket(served.queryId, Outcome.CACHED, null);
+                } else if (entry.revalidating != null || queryId != null) {
+                    if (entry.revalidating == null) {
+                        entry.revalidating = newRun(key, queryId, now);
+                        started[0] = entry.revalidating;
+                    }
+                    ticket[0] = new Ticket(served.queryId, Outcome.STALE, null);
+                }
+            }
+            return entry.served == null && entry.revalidating == null ? null : entry;
+        });
+        return ticket[0];
+    }
+
+    /**
+     * Detaches the client holding {@code clientToken} from a run. The run itself is only cancelled once no client
+     * is attached; an unknown or already detached token detaches nothing, and cancelling a finished (cached) run does
+     * nothing. Without a token the run is only cancelled if at most one client is attached. A run started on another
+     * node is cancelled there, and other unknown query IDs are cancelled directly.
+     */
+    public void cancel(String queryId, String clientToken) {
+        if (runs.get(queryId) == null && sendToOwner(SearchOwnershipRegistry.CANCEL, queryId, clientToken)) {
+            return;
+        }
+        cancelLocally(queryId, clientToken);
+    }
+
+    /**
+     * Control message from another node about a search this node owns.
+     */
+    private void onControl(String operation, String queryId, String argument) {
+        if (SearchOwnershipRegistry.CANCEL.equals(operation)) {
+            cancelLocally(queryId, argument);
+        }
+    }
+
+    /**
+     * Forwards a control operation to the node owning the search, if that is another node.
+     */
+    private boolean sendToOwner(String operation, String queryId, String argument) {
+        String owner = flightSearchService.getOwner(queryId);
+        if (owner == null || owner.equals(searchOwnershipRegistry.getNodeId())) {
+            return false;
+        }
+        searchOwnershipRegistry.send(owner, operation, queryId, argument);
+        return true;
+    }
+
+    private void cancelLocally(String queryId, String clientToken) {
+        Run run = runs.get(queryId);
+        if (run == null) {
+            flightSearchService.cancelSearch(queryId);
+            return;
+        }
+        synchronized (this) {
+            if (run.finished || run.cancelled) {
+                return;
+            }
+            if (clientToken != null) {
+                // A repeated cancel finds its token gone and detaches nobody else
+                if (!run.clients.remove(clientToken) || !run.clients.isEmpty()) {
+                    return;
+                }
+            } else if (run.clients.size() > 1) {
+                // The caller cannot be told apart from the other clients
+                return;
+            }
+            run.cancelled = true;
+        }
+        flightSearchService.cancelSearch(queryId);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * Share of a run when sources are short of quota: one per attached client, less for a background revalidation.
+     */
+    private synchronized double weight(Run run) {
+        return !run.clients.isEmpty() ? run.clients.size() : revalidateWeight;
+    }
+
+    /**
+     * Query ID of a new run of a search, derived from its next shared generation.
+     */
+    private String nextQueryId(String searchKey, long now) {
+        try {
+            return flightSearchService.generateQueryId(searchKey, searchOwnershipRegistry.nextGeneration(searchKey));
+        } catch (RuntimeException e) {
+            // Registry unavailable: a node-scoped generation still never collides with another node's runs
+            System.out.println("Search generation unavailable, using a node-local one: " + e.getMessage());
+            return flightSearchService.generateQueryId(searchKey + ":" + searchOwnershipRegistry.getNodeId(), now);
+        }
+    }
+
+    private Run newRun(String searchKey, String queryId, long now) {
+        Run run = new Run(searchKey, queryId, now);
+        runs.put(run.queryId, run);
+        return run;
+    }
+
+    /**
+     * Whether a run can still be handed out: not cancelled, not stuck, and, once finished, completed and not past
+     * its stale window. Called with the monitor held.
+     */
+    private boolean isServable(Run run, long now) {
+        if (run.cancelled) {
+            return false;
+        }
+        if (!run.finished) {
+            return now - run.startedAt < stuckMillis;
+        }
+        return run.completed && now - run.finishedAt < ttlMillis + staleMillis;
+    }
+
+    private void onFinished(Run run, SearchLifecycle.State state) {
+        long now = System.currentTimeMillis();
+        boolean completed = state == SearchLifecycle.State.COMPLETED;
+        entries.computeIfPresent(run.searchKey, (key, entry) -> {
+            synchronized (this) {
+                run.finished = true;
+                run.finishedAt = now;
+                run.completed = completed;
+                if (state == SearchLifecycle.State.CANCELLED) {
+                    run.cancelled = true;
+                }
+                // Only complete results are cached; the next identical search after a partial run starts over
+                if (entry.revalidating == run) {
+                    entry.revalidating = null;
+                    if (completed) {
+                        entry.served = run;
+                    }
+                } else if (entry.served == run && !completed) {
+                    entry.served = null;
+                }
+                return entry.served == null && entry.revalidating == null ? null : entry;
+            }
+        });
+    }
+
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        // Runs outliving any deadline: stop whatever is left of them, or give up on runs that never started.
+        // Only this node's runs are swept; a run of a node that died is released by its owner lease running out
+        List<Run> stuck = new ArrayList<>();
+        synchronized (this) {
+            for (Run run : runs.values()) {
+                if (!run.finished && !run.cancelled && now - run.startedAt >= stuckMillis) {
+                    stuck.add(run);
+                }
+            }
+        }
+        for (Run run : stuck) {
+            if (!flightSearchService.expireSearch(run.queryId) && flightSearchService.getState(run.queryId) == null) {
+                onFinished(run, SearchLifecycle.State.CANCELLED);
+            }
+        }
+
+        // Same lock order as search(): map bin first, then the monitor
+        for (String searchKey : entries.keySet()) {
+            entries.computeIfPresent(searchKey, (key, entry) -> {
+                synchronized (this) {
+                    boolean expired = entry.revalidating == null
+                        && (entry.served == null || !isServable(entry.served, now));
+                    return expired ? null : entry;
+                }
+            });
+        }
+        synchronized (this) {
+            runs.values().removeIf(run -> {
+                SearchEntry entry = entries.get(run.searchKey);
+                return run.finished && (entry == null || (entry.served != run && entry.revalidating != run));
+            });
+        }
+    }
+}
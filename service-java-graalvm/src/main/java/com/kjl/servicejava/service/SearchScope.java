@@ -0,0 +1,170 @@
+package com.kjl.servicejava.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Structured task scope for one search's source fan-out.
+ * Children are forked on the search executor: {@link #join()} waits for them up to their own timeout and the
+ * scope's global deadline, interrupting whatever is still running, and {@link #cancel()} interrupts every child
+ * at once. {@link #close()} interrupts what is left and waits up to {@link #CLOSE_GRACE} for it to exit; a child
+ * ignoring its interrupt (e.g. stuck in a non-interruptible read) longer than that is left running, and logged.
+ * (The JDK's StructuredTaskScope is still a preview API in Java 25, so this keeps the same shape without it.)
+ */
+public class SearchScope implements AutoCloseable {
+    private static final Duration CLOSE_GRACE = Duration.ofSeconds(1);
+
+    private final ExecutorService executor;
+    private final long deadlineNanos;
+    private final List<Child> children = new CopyOnWriteArrayList<>();
+    private volatile boolean cancelled;
+
+    public SearchScope(ExecutorService executor, Duration deadline) {
+        this.executor = executor;
+        this.deadlineNanos = System.nanoTime() + deadline.toNanos();
+    }
+
+    /**
+     * Child task outcome after {@link #join()}.
+     */
+    public enum ChildState { RUNNING, DONE, FAILED, TIMED_OUT, CANCELLED }
+
+    /**
+     * Forks a child task that is interrupted once {@code timeout} or the scope deadline, whichever is first, passes.
+     */
+    public void fork(String name, Duration timeout, Runnable task) {
+        if (cancelled) {
+            throw new IllegalStateException("Scope is cancelled");
+        }
+        long childDeadline = Math.min(deadlineNanos, System.nanoTime() + timeout.toNanos());
+        Child child = new Child(name, childDeadline);
+        children.add(child);
+        child.future = executor.submit(() -> {
+            // A child cancelled before it started never runs
+            if (!child.claimed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                task.run();
+            } finally {
+                child.exited.countDown();
+            }
+        });
+        if (cancelled) {
+            child.future.cancel(true);
+        }
+    }
+
+    /**
+     * Waits for every child to finish, interrupting children that run past their deadline.
+     */
+    public void join() throws InterruptedException {
+        for (Child child : children) {
+            long remaining = child.deadlineNanos - System.nanoTime();
+            try {
+                if (remaining <= 0 && !child.future.isDone()) {
+                    throw new TimeoutException();
+                }
+                child.future.get(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+                child.state = ChildState.DONE;
+            } catch (TimeoutException e) {
+                child.future.cancel(true);
+                child.state = ChildState.TIMED_OUT;
+            } catch (CancellationException e) {
+                child.state = ChildState.CANCELLED;
+            } catch (ExecutionException e) {
+                child.state = ChildState.FAILED;
+            } catch (InterruptedException e) {
+                cancel();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Cancels the scope and interrupts every running child.
+     */
+    public void cancel() {
+        cancelled = true;
+        for (Child child : children) {
+            if (child.future != null) {
+                child.future.cancel(true);
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * True once the scope's global deadline has passed.
+     */
+    public boolean isExpired() {
+        return System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * Outcome of a forked child, {@link ChildState#RUNNING} until joined.
+     */
+    public ChildState getState(String name) {
+        for (Child child : children) {
+            if (child.name.equals(name)) {
+                return child.state;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Interrupts every child still running and waits up to {@link #CLOSE_GRACE} for all of them to exit.
+     */
+    @Override
+    public void close() {
+        for (Child child : children) {
+            if (child.future != null && !child.future.isDone()) {
+                child.future.cancel(true);
+            }
+            if (child.claimed.compareAndSet(false, true)) {
+                // Not started, and now it never will
+                child.exited.countDown();
+            }
+        }
+        long graceDeadline = System.nanoTime() + CLOSE_GRACE.toNanos();
+        for (Child child : children) {
+            try {
+                if (!child.exited.await(graceDeadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    System.out.println("Scope task " + child.name + " ignored its interrupt for "
+                        + CLOSE_GRACE.toMillis() + "ms and was left running");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static final class Child {
+        private final String name;
+        private final long deadlineNanos;
+        private volatile Future<?> future;
+        private volatile ChildState state = ChildState.RUNNING;
+        // Taken by the task when it starts, or by close() to keep it from ever starting
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final CountDownLatch exited = new CountDownLatch(1);
+
+        private Child(String name, long deadlineNanos) {
+            this.name = name;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.kjl.servicejava.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Rolling latency histograms of each upstream source over the last flight.sources.latency.window-ms:
+ * response latency (until the source starts answering; drives request hedging) and completion time (until its last
+ * result; drives adaptive source timeouts). Buckets are log-linear like HdrHistogram's, 8 per power of two, so
+ * percentiles are within 12.5%; the window moves in {@value #SLICES} slices that are recycled as it passes.
+ */
+@Component
+public class SourceLatencyStats {
+    private static final int SLICES = 6;
+    private static final int MIN_SAMPLES = 20;
+    // 16 linear buckets (0-15 micros), then 8 per power of two up to 2^27 micros (about 134 seconds)
+    private static final int LINEAR_BUCKETS = 16;
+    private static final int SUB_BUCKETS = 8;
+    private static final int BUCKETS = LINEAR_BUCKETS + (27 - 4 + 1) * SUB_BUCKETS;
+
+    private final long sliceNanos;
+    private final ConcurrentMap<String, Histogram> responses = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Histogram> completions = new ConcurrentHashMap<>();
+
+    public SourceLatencyStats(@Value("${flight.sources.latency.window-ms:120000}") long windowMillis) {
+        this.sliceNanos = Math.max(1, windowMillis / SLICES) * 1_000_000;
+    }
+
+    public void recordResponse(String source, long latencyNanos) {
+        responses.computeIfAbsent(source, s -> new Histogram()).add(latencyNanos);
+    }
+
+    public void recordCompletion(String source, long latencyNanos) {
+        completions.computeIfAbsent(source, s -> new Histogram()).add(latencyNanos);
+    }
+
+    /**
+     * Response latency percentile ({@code quantile} in 0..1) of the source in nanoseconds, or -1 with too few
+     * samples in the window.
+     */
+    public long getResponsePercentile(String source, double quantile) {
+        Histogram histogram = responses.get(source);
+        return histogram != null ? histogram.percentile(quantile) : -1;
+    }
+
+    /**
+     * Completion time percentile of the source in nanoseconds, or -1 with too few samples in the window.
+     */
+    public long getCompletionPercentile(String source, double quantile) {
+        Histogram histogram = completions.get(source);
+        return histogram != null ? histogram.percentile(quantile) : -1;
+    }
+
+    /**
+     * Sample count and p50 / p95 / p99 in milliseconds of both histograms per source, for monitoring.
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        responses.forEach((source, histogram) -> entry(stats, source).put("response", summary(histogram)));
+        completions.forEach((source, histogram) -> entry(stats, source).put("completion", summary(histogram)));
+        return stats;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> entry(Map<String, Object> stats, String source) {
+        return (Map<String, Object>) stats.computeIfAbsent(source, s -> new LinkedHashMap<String, Object>());
+    }
+
+    private static Map<String, Object> summary(Histogram histogram) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("samples", histogram.size());
+        summary.put("p50_ms", toMillis(histogram.percentile(0.50)));
+        summary.put("p95_ms", toMillis(histogram.percentile(0.95)));
+        summary.put("p99_ms", toMillis(histogram.percentile(0.99)));
+        return summary;
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos < 0 ? -1 : nanos / 1_000_000;
+    }
+
+    private static int bucket(long latencyNanos) {
+        long micros = Math.max(0, latencyNanos / 1000);
+        if (micros < LINEAR_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int index = LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + (int) ((micros >> (exponent - 3)) & (SUB_BUCKETS - 1));
+        return Math.min(index, BUCKETS - 1);
+    }
+
+    /**
+     * Highest latency in the bucket, so percentiles err on the slow side.
+     */
+    private static long upperBoundNanos(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket * 1000L + 999;
+        }
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 4;
+        int sub = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        return (((long) (SUB_BUCKETS + sub + 1) << (exponent - 3)) - 1) * 1000 + 999;
+    }
+
+    /**
+     * Bucket counts of the live slices of one source's window.
+     */
+    private final class Histogram {
+        private final long[][] counts = new long[SLICES][BUCKETS];
+        private final long[] sliceIds = new long[SLICES];
+
+        private Histogram() {
+            Arrays.fill(sliceIds, Long.MIN_VALUE);
+        }
+
+        private synchronized void add(long latencyNanos) {
+            long sliceId = Math.floorDiv(System.nanoTime(), sliceNanos);
+            int slice = (int) Math.floorMod(sliceId, SLICES);
+            if (sliceIds[slice] != sliceId) {
+                // Slice left the window: reuse it for the current one
+                Arrays.fill(counts[slice], 0);
+                sliceIds[slice] = sliceId;
+            }
+            counts[slice][bucket(latencyNanos)]++;
+        }
+
+        private long[] merged() {
+            long[] merged = new long[BUCKETS + 1];
+            long currentId = Math.floorDiv(System.nanoTime(), sliceNanos);
+            synchronized (this) {
+                for (int slice = 0; slice < SLICES; slice++) {
+                    if (sliceIds[slice] != Long.MIN_VALUE && currentId - sliceIds[slice] < SLICES) {
+                        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                            merged[bucket] += counts[slice][bucket];
+                        }
+                    }
+                }
+            }
+            // Total count in the extra last element
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                merged[BUCKETS] += merged[bucket];
+            }
+            return merged;
+        }
+
+        private long size() {
+            return merged()[BUCKETS];
+        }
+
+        private long percentile(double quantile) {
+            long[] merged = merged();
+            long total = merged[BUCKETS];
+            if (total < MIN_SAMPLES) {
+                return -1;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                seen += merged[bucket];
+                if (seen >= rank) {
+                    return upperBoundNanos(bucket);
+                }
+            }
+            return upperBoundNanos(BUCKETS - 1);
+        }
+    }
+}
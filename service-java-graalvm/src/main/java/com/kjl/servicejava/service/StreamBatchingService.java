@@ -0,0 +1,121 @@
+package com.kjl.servicejava.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Opt-in micro-batching for streaming transports (batch_ms / batch_size on SSE and WebSocket).
+ * Flight frames of a connection are held for up to batch_ms or until batch_size of them arrived, then sent as
+ * one "batch" frame with progress reported once. Any other frame (source, completed, expired, cancelled) flushes
+ * the pending batch first, so ordering is unchanged. Windows are timed by one shared scheduler thread.
+ */
+@Service
+public class StreamBatchingService {
+    private final QueryFanoutHub queryFanoutHub;
+    private final int defaultBatchMs;
+    private final int maxBatchMs;
+    private final int maxBatchSize;
+    private final ScheduledThreadPoolExecutor windows;
+
+    @Autowired
+    public StreamBatchingService(QueryFanoutHub queryFanoutHub,
+                                 @Value("${flight.stream.batch.default-ms:100}") int defaultBatchMs,
+                                 @Value("${flight.stream.batch.max-ms:5000}") int maxBatchMs,
+                                 @Value("${flight.stream.batch.max-size:500}") int maxBatchSize) {
+        this.queryFanoutHub = queryFanoutHub;
+        this.defaultBatchMs = defaultBatchMs;
+        this.maxBatchMs = maxBatchMs;
+        this.maxBatchSize = maxBatchSize;
+        this.windows = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "stream-batch-window");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Windows closed early by a full batch are dropped from the queue right away
+        this.windows.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Returns a subscriber that hands frames to {@code sink}, batching flight frames when either parameter is set.
+     * Without batch_ms a window lasts flight.stream.batch.default-ms; without batch_size it holds up to flight.stream.batch.max-size.
+     */
+    public QueryFanoutHub.Subscriber subscriber(Consumer<QueryFanoutHub.Frame> sink, Integer batchMs, Integer batchSize) {
+        boolean timed = batchMs != null && batchMs > 0;
+        boolean sized = batchSize != null && batchSize > 0;
+        if (!timed && !sized) {
+            return new QueryFanoutHub.Subscriber() {
+                @Override
+                public void onFrame(QueryFanoutHub.Frame frame) {
+                    sink.accept(frame);
+                }
+            };
+        }
+        int windowMs = Math.min(timed ? batchMs : defaultBatchMs, maxBatchMs);
+        int size = Math.min(sized ? batchSize : maxBatchSize, maxBatchSize);
+        return new Batcher(sink, windowMs, size);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        windows.shutdownNow();
+    }
+
+    /**
+     * Batching state of one connection. Called by the fan-out reader and the window scheduler.
+     */
+    private final class Batcher implements QueryFanoutHub.Subscriber {
+        private final Consumer<QueryFanoutHub.Frame> sink;
+        private final int windowMs;
+        private final int size;
+        private final List<QueryFanoutHub.Frame> pending = new ArrayList<>();
+        private ScheduledFuture<?> window;
+
+        private Batcher(Consumer<QueryFanoutHub.Frame> sink, int windowMs, int size) {
+            this.sink = sink;
+            this.windowMs = windowMs;
+            this.size = size;
+        }
+
+        @Override
+        public synchronized void onFrame(QueryFanoutHub.Frame frame) {
+            if (frame.getResult() == null) {
+                flush();
+                sink.accept(frame);
+                return;
+            }
+            pending.add(frame);
+            if (pending.size() >= size) {
+                flush();
+            } else if (window == null) {
+                window = windows.schedule(this::onWindowClosed, windowMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private synchronized void onWindowClosed() {
+            window = null;
+            flush();
+        }
+
+        private void flush() {
+            if (window != null) {
+                window.cancel(false);
+                window = null;
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+            QueryFanoutHub.Frame frame = queryFanoutHub.batchFrame(pending);
+            pending.clear();
+            sink.accept(frame);
+        }
+    }
+}
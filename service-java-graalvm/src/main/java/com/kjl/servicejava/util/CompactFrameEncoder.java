@@ -0,0 +1,154 @@
+package com.kjl.servicejava.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Compact CBOR encoding of stream frames for binary WebSocket clients.
+ * Fields that are the same for every result of a search (route, dates, pax, trip type) are sent once in a
+ * "header" frame and left out of each result. affiliate_link and booking_url are reduced to templates with
+ * {source}, {flight_number} and {price} placeholders; a result keeps any field that differs from the header.
+ */
+@Component
+public class CompactFrameEncoder {
+    public static final String ENCODING = "cbor";
+
+    private static final String[] CONSTANT_FIELDS = {"from", "to", "trip_type", "departure_date", "return_date", "pax"};
+    private static final String[] LINK_FIELDS = {"affiliate_link", "booking_url"};
+
+    private final ObjectMapper jsonMapper;
+    private final CBORMapper cborMapper = new CBORMapper();
+
+    @Autowired
+    public CompactFrameEncoder(ObjectMapper jsonMapper) {
+        this.jsonMapper = jsonMapper;
+    }
+
+    /**
+     * A frame in compact form and the header it was compacted against (null for frames without results).
+     */
+    public static final class Encoded {
+        private final byte[] bytes;
+        private final ObjectNode header;
+
+        private Encoded(byte[] bytes, ObjectNode header) {
+            this.bytes = bytes;
+            this.header = header;
+        }
+
+        public byte[] getBytes() { return bytes; }
+        public ObjectNode getHeader() { return header; }
+    }
+
+    /**
+     * Encodes a JSON frame (flight, batch or control) as CBOR, leaving out the header fields of its results.
+     */
+    public Encoded encode(byte[] frameJson, boolean flight) {
+        try {
+            JsonNode node = jsonMapper.readTree(frameJson);
+            ObjectNode header = null;
+            if (flight && node instanceof ObjectNode result) {
+                header = headerOf(result);
+                strip(result, header);
+            } else if (node.get("results") instanceof ArrayNode results
+                && !results.isEmpty() && results.get(0) instanceof ObjectNode first) {
+                header = headerOf(first);
+                for (JsonNode result : results) {
+                    if (result instanceof ObjectNode object) {
+                        strip(object, header);
+                    }
+                }
+            }
+            return new Encoded(cborMapper.writeValueAsBytes(node), header);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The "header" frame a client needs before results compacted against {@code header}.
+     */
+    public byte[] encodeHeader(ObjectNode header) {
+        ObjectNode frame = jsonMapper.createObjectNode();
+        frame.put("type", "header");
+        frame.setAll(header);
+        try {
+            return cborMapper.writeValueAsBytes(frame);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ObjectNode headerOf(ObjectNode result) {
+        ObjectNode header = jsonMapper.createObjectNode();
+        for (String field : CONSTANT_FIELDS) {
+            JsonNode value = result.get(field);
+            if (value != null) {
+                header.set(field, value);
+            }
+        }
+        for (String field : LINK_FIELDS) {
+            String template = template(result, field);
+            if (template != null) {
+                header.put(field, template);
+            }
+        }
+        return header;
+    }
+
+    private static void strip(ObjectNode result, ObjectNode header) {
+        for (String field : CONSTANT_FIELDS) {
+            JsonNode value = header.get(field);
+            if (value != null && value.equals(result.get(field))) {
+                result.remove(field);
+            }
+        }
+        for (String field : LINK_FIELDS) {
+            JsonNode template = header.get(field);
+            JsonNode link = result.get(field);
+            if (template != null && link != null && render(template.asText(), result).equals(link.asText())) {
+                result.remove(field);
+            }
+        }
+    }
+
+    /**
+     * Replaces the result's source, flight number and price in a link with placeholders,
+     * or returns null if the template would not render back to the same link.
+     */
+    private static String template(ObjectNode result, String field) {
+        JsonNode link = result.get(field);
+        if (link == null || !link.isTextual()) {
+            return null;
+        }
+        String template = link.asText();
+        template = replace(template, text(result, "price"), "{price}");
+        template = replace(template, text(result, "flight_number"), "{flight_number}");
+        template = replace(template, text(result, "source"), "{source}");
+        return render(template, result).equals(link.asText()) ? template : null;
+    }
+
+    private static String render(String template, ObjectNode result) {
+        return template
+            .replace("{source}", text(result, "source"))
+            .replace("{flight_number}", text(result, "flight_number"))
+            .replace("{price}", text(result, "price"));
+    }
+
+    private static String replace(String template, String value, String placeholder) {
+        return value.isEmpty() ? template : template.replace(value, placeholder);
+    }
+
+    private static String text(ObjectNode result, String field) {
+        JsonNode value = result.get(field);
+        return value == null || value.isNull() ? "" : value.asText();
+    }
+}
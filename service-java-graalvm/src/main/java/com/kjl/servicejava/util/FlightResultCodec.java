@@ -0,0 +1,115 @@
+package com.kjl.servicejava.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.kjl.servicejava.model.FlightResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+
+/**
+ * Serializes flight results once into UTF-8 JSON bytes that Redis and every transport reuse.
+ * Holds the cached Jackson reader/writer and pre-compiled formatters used on the flight path.
+ */
+@Component
+public class FlightResultCodec {
+    public static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final byte[] TYPE_PREFIX = "{\"type\":\"".getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectWriter resultWriter;
+    private final ObjectReader resultReader;
+    private final ObjectWriter mapWriter;
+
+    @Autowired
+    public FlightResultCodec(ObjectMapper objectMapper) {
+        this.resultWriter = objectMapper.writerFor(FlightResult.class);
+        this.resultReader = objectMapper.readerFor(FlightResult.class);
+        this.mapWriter = objectMapper.writerFor(Map.class);
+    }
+
+    public byte[] encode(FlightResult result) {
+        try {
+            return resultWriter.writeValueAsBytes(result);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public byte[] encode(Map<String, Object> message) {
+        try {
+            return mapWriter.writeValueAsBytes(message);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public FlightResult decode(byte[] json) throws IOException {
+        return resultReader.readValue(json);
+    }
+
+    /**
+     * Current timestamp in the format emitted with every result.
+     */
+    public String timestamp() {
+        return LocalDateTime.now().format(TIMESTAMP_FORMAT);
+    }
+
+    /**
+     * Returns the message type (completed, cancelled, ...) without parsing the document, or null for a flight result.
+     * Relies on {@link FlightResult} writing "type" as its first property, so a compact document starting with any
+     * other member has none; anything else falls back to a typed read.
+     */
+    public String peekType(byte[] json) {
+        if (json.length > TYPE_PREFIX.length && startsWith(json, TYPE_PREFIX)) {
+            for (int i = TYPE_PREFIX.length; i < json.length; i++) {
+                if (json[i] == '"') {
+                    return new String(json, TYPE_PREFIX.length, i - TYPE_PREFIX.length, StandardCharsets.UTF_8);
+                }
+            }
+        }
+        if (json.length > 1 && (json[1] == '}' || json[1] == '"')) {
+            return null;
+        }
+        try {
+            return decode(json).getType();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Prepends pre-rendered JSON members (e.g. {@code "progress":50,"status":"searching"}) to a serialized object,
+     * so transports can annotate a result without parsing and re-serializing it.
+     */
+    public byte[] withFields(byte[] json, String members) {
+        byte[] prefix = members.getBytes(StandardCharsets.UTF_8);
+        boolean empty = json.length <= 2;
+        byte[] out = new byte[1 + prefix.length + (empty ? 1 : json.length)];
+        out[0] = '{';
+        System.arraycopy(prefix, 0, out, 1, prefix.length);
+        if (empty) {
+            out[out.length - 1] = '}';
+        } else {
+            out[1 + prefix.length] = ',';
+            System.arraycopy(json, 1, out, 2 + prefix.length, json.length - 1);
+        }
+        return out;
+    }
+
+    private static boolean startsWith(byte[] json, byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (json[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
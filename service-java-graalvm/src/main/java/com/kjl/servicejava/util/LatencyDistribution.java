@@ -0,0 +1,73 @@
+package com.kjl.servicejava.util;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Latency distribution for simulated and stubbed upstream sources, parsed from a short spec (milliseconds):
+ * {@code fixed:100}, {@code uniform:10-710}, {@code normal:300,50} (mean, standard deviation) or
+ * {@code lognormal:200,0.6} (median, sigma; long-tailed like real provider latencies).
+ */
+public final class LatencyDistribution {
+    private final String spec;
+    private final String kind;
+    private final double a;
+    private final double b;
+
+    private LatencyDistribution(String spec, String kind, double a, double b) {
+        this.spec = spec;
+        this.kind = kind;
+        this.a = a;
+        this.b = b;
+    }
+
+    public static LatencyDistribution parse(String spec) {
+        String value = spec.trim().toLowerCase(Locale.ROOT);
+        int colon = value.indexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Latency spec must be <kind>:<args>: " + spec);
+        }
+        String kind = value.substring(0, colon);
+        String[] args = value.substring(colon + 1).split("[,\\-]");
+        try {
+            switch (kind) {
+                case "fixed":
+                    return new LatencyDistribution(spec, kind, Double.parseDouble(args[0]), 0);
+                case "uniform":
+                case "normal":
+                case "lognormal":
+                    return new LatencyDistribution(spec, kind, Double.parseDouble(args[0]), Double.parseDouble(args[1]));
+                default:
+                    throw new IllegalArgumentException("Unknown latency distribution: " + spec);
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid latency spec: " + spec, e);
+        }
+    }
+
+    /**
+     * Draws one latency in milliseconds, never negative.
+     */
+    public long sampleMillis(Random random) {
+        double millis;
+        switch (kind) {
+            case "uniform":
+                millis = a + random.nextDouble() * (b - a);
+                break;
+            case "normal":
+                millis = a + random.nextGaussian() * b;
+                break;
+            case "lognormal":
+                millis = a * Math.exp(random.nextGaussian() * b);
+                break;
+            default:
+                millis = a;
+        }
+        return Math.max(0, Math.round(millis));
+    }
+
+    @Override
+    public String toString() {
+        return spec;
+    }
+}
@@ -5,15 +5,21 @@ import com.kjl.servicejava.model.InvoiceValidationResponse;
 import com.kjl.servicejava.model.ItemCalculation;
 import com.kjl.servicejava.model.PriceInfo;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Currency;
 import java.util.List;
 
 /**
  * Abstract base class for order validators implementing Template Method pattern.
  * Provides common validation logic and calculation methods.
+ * All amounts are calculated exactly as long minor units (e.g. cents) of the order currency.
  */
 public abstract class AbstractOrderValidator implements OrderValidator {
-    protected static final double TOLERANCE = 0.01;
+    private static final int DEFAULT_SCALE = 2;
+    private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1_000L, 10_000L};
 
     @Override
     public void validate(BaseOrder order, InvoiceValidationResponse response) {
@@ -36,13 +42,13 @@ public abstract class AbstractOrderValidator implements OrderValidator {
      * Validates the total order amount.
      */
     protected void validateOrderTotal(BaseOrder order, InvoiceValidationResponse response, ValidationContext context) {
-        double calculatedTotal = context.getCalculatedTotal();
-        double declaredTotal = order.getTransactionDetails().getGrossAmt();
+        long calculatedTotal = context.getCalculatedTotal();
+        long declaredTotal = context.toMinor(order.getTransactionDetails().getGrossAmt());
 
-        if (Math.abs(calculatedTotal - declaredTotal) > TOLERANCE) {
+        if (calculatedTotal != declaredTotal) {
             response.getErrors().add(String.format(
                 "Calculated total %.2f does not match declared gross amount %.2f",
-                calculatedTotal, declaredTotal));
+                context.toMajor(calculatedTotal), context.toMajor(declaredTotal)));
             response.setIsValid(false);
         }
     }
@@ -51,120 +57,204 @@ public abstract class AbstractOrderValidator implements OrderValidator {
      * Populates the validation summary with calculated values.
      */
     protected void populateSummary(InvoiceValidationResponse response, ValidationContext context) {
-        response.getSummary().setCalculatedTotal(context.getCalculatedTotal());
-        response.getSummary().setDeclaredTotal(context.getDeclaredTotal());
-        response.getSummary().setTotalTax(context.getTotalTax());
-        response.getSummary().setTotalDiscounts(context.getTotalDiscounts());
+        response.getSummary().setCalculatedTotal(context.toMajor(context.getCalculatedTotal()));
+        response.getSummary().setDeclaredTotal(context.toMajor(context.getDeclaredTotal()));
+        response.getSummary().setTotalTax(context.toMajor(context.getTotalTax()));
+        response.getSummary().setTotalDiscounts(context.toMajor(context.getTotalDiscounts()));
         response.getSummary().setCurrency(context.getCurrency());
-        response.getSummary().setSubtotalBeforeTaxAndDiscounts(context.getSubtotalBeforeTaxAndDiscounts());
-        response.getSummary().setSubtotalAfterDiscounts(context.getSubtotalAfterDiscounts());
-        response.getSummary().setSubtotalAfterTax(context.getSubtotalAfterTax());
+        response.getSummary().setSubtotalBeforeTaxAndDiscounts(context.toMajor(context.getSubtotalBeforeTaxAndDiscounts()));
+        response.getSummary().setSubtotalAfterDiscounts(context.toMajor(context.getSubtotalAfterDiscounts()));
+        response.getSummary().setSubtotalAfterTax(context.toMajor(context.getSubtotalAfterTax()));
     }
 
     /**
-     * Calculates discounts and addons from price info.
+     * Sums negative price info amounts (discounts) as a positive minor-unit amount.
      */
-    protected PriceCalculation calculatePriceInfo(List<PriceInfo> priceInfoList) {
-        double discounts = 0.0;
-        double addons = 0.0;
-
+    protected long calculateDiscounts(List<PriceInfo> priceInfoList, ValidationContext context) {
+        long discounts = 0;
         if (priceInfoList != null) {
-            for (PriceInfo priceInfo : priceInfoList) {
-                if (priceInfo.getAmount() != null) {
-                    if (priceInfo.getAmount() < 0) {
-                        discounts += Math.abs(priceInfo.getAmount());
-                    } else {
-                        addons += priceInfo.getAmount();
-                    }
+            for (int i = 0; i < priceInfoList.size(); i++) {
+                Double amount = priceInfoList.get(i).getAmount();
+                if (amount != null && amount < 0) {
+                    discounts -= context.toMinor(amount);
                 }
             }
         }
-
-        return new PriceCalculation(discounts, addons);
+        return discounts;
     }
 
     /**
-     * Creates an item calculation object.
+     * Sums non-negative price info amounts (addons) in minor units.
      */
-    protected ItemCalculation createItemCalculation(
-            String itemName, int index, double basePrice, int quantity,
-            double subtotalBeforeTaxAndDiscounts, double discounts,
-            double subtotalAfterDiscounts, double tax, double shipping,
-            double addons, double finalTotal, double declaredTotal) {
-        
-        ItemCalculation itemCalc = new ItemCalculation();
-        itemCalc.setItemName(itemName);
-        itemCalc.setItemIndex(index);
-        itemCalc.setBasePrice(basePrice);
-        itemCalc.setQuantity(quantity);
-        itemCalc.setSubtotalBeforeTaxAndDiscounts(subtotalBeforeTaxAndDiscounts);
-        itemCalc.setDiscounts(discounts);
-        itemCalc.setSubtotalAfterDiscounts(subtotalAfterDiscounts);
-        itemCalc.setTax(tax);
-        itemCalc.setShipping(shipping);
-        itemCalc.setAddons(addons);
-        itemCalc.setFinalTotal(finalTotal);
-        itemCalc.setDeclaredTotal(declaredTotal);
-        itemCalc.setIsValid(Math.abs(finalTotal - declaredTotal) <= TOLERANCE);
-        return itemCalc;
+    protected long calculateAddons(List<PriceInfo> priceInfoList, ValidationContext context) {
+        long addons = 0;
+        if (priceInfoList != null) {
+            for (int i = 0; i < priceInfoList.size(); i++) {
+                Double amount = priceInfoList.get(i).getAmount();
+                if (amount != null && amount >= 0) {
+                    addons += context.toMinor(amount);
+                }
+            }
+        }
+        return addons;
     }
 
     /**
      * Helper class to hold validation context during validation process.
+     * Totals are kept as long minor units at the currency's scale. Item lines are recorded into primitive arrays
+     * and only turned into {@link ItemCalculation} objects when {@link #getItemBreakdown()} is called.
      */
     protected static class ValidationContext {
-        private double calculatedTotal = 0.0;
-        private double totalTax = 0.0;
-        private double totalDiscounts = 0.0;
-        private double subtotalBeforeTaxAndDiscounts = 0.0;
-        private double subtotalAfterDiscounts = 0.0;
-        private double subtotalAfterTax = 0.0;
+        private static final int ITEM_FIELDS = 11;
+        private static final int INDEX = 0, QUANTITY = 1, BASE_PRICE = 2, SUBTOTAL_BEFORE = 3, DISCOUNTS = 4,
+            SUBTOTAL_AFTER_DISCOUNTS = 5, TAX = 6, SHIPPING = 7, ADDONS = 8, FINAL_TOTAL = 9, DECLARED_TOTAL = 10;
+
+        private long calculatedTotal = 0;
+        private long totalTax = 0;
+        private long totalDiscounts = 0;
+        private long subtotalBeforeTaxAndDiscounts = 0;
+        private long subtotalAfterDiscounts = 0;
+        private long subtotalAfterTax = 0;
         private String currency;
-        private double declaredTotal = 0.0;
-        private List<ItemCalculation> itemBreakdown = new ArrayList<>();
+        private int scale = DEFAULT_SCALE;
+        private long declaredTotal = 0;
+
+        private int itemCount = 0;
+        private long[] itemValues = new long[4 * ITEM_FIELDS];
+        private String[] itemNames = new String[4];
+        private List<ItemCalculation> itemBreakdown;
 
         // Getters and setters
-        public double getCalculatedTotal() { return calculatedTotal; }
-        public void addToCalculatedTotal(double amount) { this.calculatedTotal += amount; }
+        public long getCalculatedTotal() { return calculatedTotal; }
+        public void addToCalculatedTotal(long amount) { this.calculatedTotal += amount; }
 
-        public double getTotalTax() { return totalTax; }
-        public void addToTotalTax(double amount) { this.totalTax += amount; }
+        public long getTotalTax() { return totalTax; }
+        public void addToTotalTax(long amount) { this.totalTax += amount; }
 
-        public double getTotalDiscounts() { return totalDiscounts; }
-        public void addToTotalDiscounts(double amount) { this.totalDiscounts += amount; }
+        public long getTotalDiscounts() { return totalDiscounts; }
+        public void addToTotalDiscounts(long amount) { this.totalDiscounts += amount; }
 
-        public double getSubtotalBeforeTaxAndDiscounts() { return subtotalBeforeTaxAndDiscounts; }
-        public void addToSubtotalBeforeTaxAndDiscounts(double amount) { this.subtotalBeforeTaxAndDiscounts += amount; }
+        public long getSubtotalBeforeTaxAndDiscounts() { return subtotalBeforeTaxAndDiscounts; }
+        public void addToSubtotalBeforeTaxAndDiscounts(long amount) { this.subtotalBeforeTaxAndDiscounts += amount; }
 
-        public double getSubtotalAfterDiscounts() { return subtotalAfterDiscounts; }
-        public void addToSubtotalAfterDiscounts(double amount) { this.subtotalAfterDiscounts += amount; }
+        public long getSubtotalAfterDiscounts() { return subtotalAfterDiscounts; }
+        public void addToSubtotalAfterDiscounts(long amount) { this.subtotalAfterDiscounts += amount; }
 
-        public double getSubtotalAfterTax() { return subtotalAfterTax; }
-        public void addToSubtotalAfterTax(double amount) { this.subtotalAfterTax += amount; }
+        public long getSubtotalAfterTax() { return subtotalAfterTax; }
+        public void addToSubtotalAfterTax(long amount) { this.subtotalAfterTax += amount; }
 
         public String getCurrency() { return currency; }
-        public void setCurrency(String currency) { this.currency = currency; }
+        /** Sets the currency and the minor-unit scale used for every conversion that follows. */
+        public void setCurrency(String currency) {
+            this.currency = currency;
+            this.scale = scaleOf(currency);
+        }
 
-        public double getDeclaredTotal() { return declaredTotal; }
-        public void setDeclaredTotal(double declaredTotal) { this.declaredTotal = declaredTotal; }
+        public long getDeclaredTotal() { return declaredTotal; }
+        public void setDeclaredTotal(long declaredTotal) { this.declaredTotal = declaredTotal; }
 
-        public List<ItemCalculation> getItemBreakdown() { return itemBreakdown; }
-        public void addItemCalculation(ItemCalculation itemCalc) { this.itemBreakdown.add(itemCalc); }
-    }
+        /**
+         * Converts a decimal amount to minor units, rounding half up to the currency scale.
+         * Rounds the amount's shortest decimal form (2.675 as 2.675, not its binary value 2.67499...), so each input
+         * amount is converted exactly once and never through a scaled double.
+         */
+        public long toMinor(double amount) {
+            return BigDecimal.valueOf(amount).setScale(scale, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        }
 
-    /**
-     * Helper class for price calculations.
-     */
-    protected static class PriceCalculation {
-        private final double discounts;
-        private final double addons;
+        /**
+         * {@code percent}% of a minor-unit amount, rounded half up to the minor unit. Computed on the decimal value
+         * of {@code percent}, like {@link #toMinor}, so e.g. 1.005% of 10000 is 101 rather than a binary 100.49999...
+         */
+        public long percentOf(long minor, double percent) {
+            return BigDecimal.valueOf(percent).multiply(BigDecimal.valueOf(minor)).movePointLeft(2)
+                .setScale(0, RoundingMode.HALF_UP).longValueExact();
+        }
 
-        public PriceCalculation(double discounts, double addons) {
-            this.discounts = discounts;
-            this.addons = addons;
+        public double toMajor(long minor) {
+            return (double) minor / POWERS_OF_TEN[scale];
         }
 
-        public double getDiscounts() { return discounts; }
-        public double getAddons() { return addons; }
+        /**
+         * Records one item line, adds it to the order totals and returns whether it matches its declared total.
+         */
+        public boolean addItem(String itemName, int index, long basePrice, int quantity,
+                               long subtotalBeforeTaxAndDiscounts, long discounts,
+                               long subtotalAfterDiscounts, long tax, long shipping,
+                               long addons, long finalTotal, long declaredTotal) {
+            if (itemCount == itemNames.length) {
+                itemNames = Arrays.copyOf(itemNames, itemCount * 2);
+                itemValues = Arrays.copyOf(itemValues, itemCount * 2 * ITEM_FIELDS);
+            }
+            int offset = itemCount * ITEM_FIELDS;
+            itemNames[itemCount] = itemName;
+            itemValues[offset + INDEX] = index;
+            itemValues[offset + QUANTITY] = quantity;
+            itemValues[offset + BASE_PRICE] = basePrice;
+            itemValues[offset + SUBTOTAL_BEFORE] = subtotalBeforeTaxAndDiscounts;
+            itemValues[offset + DISCOUNTS] = discounts;
+            itemValues[offset + SUBTOTAL_AFTER_DISCOUNTS] = subtotalAfterDiscounts;
+            itemValues[offset + TAX] = tax;
+            itemValues[offset + SHIPPING] = shipping;
+            itemValues[offset + ADDONS] = addons;
+            itemValues[offset + FINAL_TOTAL] = finalTotal;
+            itemValues[offset + DECLARED_TOTAL] = declaredTotal;
+            itemCount++;
+            itemBreakdown = null;
+
+            this.calculatedTotal += finalTotal;
+            this.totalTax += tax;
+            this.totalDiscounts += discounts;
+            this.subtotalBeforeTaxAndDiscounts += subtotalBeforeTaxAndDiscounts;
+            this.subtotalAfterDiscounts += subtotalAfterDiscounts;
+            this.subtotalAfterTax += subtotalAfterDiscounts + tax;
+            return finalTotal == declaredTotal;
+        }
+
+        public int getItemCount() { return itemCount; }
+
+        /**
+         * Materializes the recorded item lines as {@link ItemCalculation} objects in major units.
+         */
+        public List<ItemCalculation> getItemBreakdown() {
+            if (itemBreakdown == null) {
+                List<ItemCalculation> breakdown = new ArrayList<>(itemCount);
+                for (int i = 0; i < itemCount; i++) {
+                    int offset = i * ITEM_FIELDS;
+                    ItemCalculation itemCalc = new ItemCalculation();
+                    itemCalc.setItemName(itemNames[i]);
+                    itemCalc.setItemIndex((int) itemValues[offset + INDEX]);
+                    itemCalc.setBasePrice(toMajor(itemValues[offset + BASE_PRICE]));
+                    itemCalc.setQuantity((int) itemValues[offset + QUANTITY]);
+                    itemCalc.setSubtotalBeforeTaxAndDiscounts(toMajor(itemValues[offset + SUBTOTAL_BEFORE]));
+                    itemCalc.setDiscounts(toMajor(itemValues[offset + DISCOUNTS]));
+                    itemCalc.setSubtotalAfterDiscounts(toMajor(itemValues[offset + SUBTOTAL_AFTER_DISCOUNTS]));
+                    itemCalc.setTax(toMajor(itemValues[offset + TAX]));
+                    itemCalc.setShipping(toMajor(itemValues[offset + SHIPPING]));
+                    itemCalc.setAddons(toMajor(itemValues[offset + ADDONS]));
+                    itemCalc.setFinalTotal(toMajor(itemValues[offset + FINAL_TOTAL]));
+                    itemCalc.setDeclaredTotal(toMajor(itemValues[offset + DECLARED_TOTAL]));
+                    itemCalc.setIsValid(itemValues[offset + FINAL_TOTAL] == itemValues[offset + DECLARED_TOTAL]);
+                    breakdown.add(itemCalc);
+                }
+                itemBreakdown = breakdown;
+            }
+            return itemBreakdown;
+        }
+
+        /**
+         * ISO 4217 minor-unit digits of a currency (IDR 2, JPY 0, ...), 2 when unknown.
+         */
+        private static int scaleOf(String currency) {
+            if (currency == null) {
+                return DEFAULT_SCALE;
+            }
+            try {
+                int digits = Currency.getInstance(currency).getDefaultFractionDigits();
+                return digits >= 0 && digits < POWERS_OF_TEN.length ? digits : DEFAULT_SCALE;
+            } catch (IllegalArgumentException e) {
+                return DEFAULT_SCALE;
+            }
+        }
     }
 }
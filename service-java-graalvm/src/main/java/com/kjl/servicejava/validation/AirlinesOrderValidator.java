@@ -17,7 +17,7 @@ public class AirlinesOrderValidator extends AbstractOrderValidator {
     protected void validateOrderItems(BaseOrder order, InvoiceValidationResponse response, ValidationContext context) {
         AirlinesOrder airlinesOrder = (AirlinesOrder) order;
         context.setCurrency(airlinesOrder.getTransactionDetails().getCurrency());
-        context.setDeclaredTotal(airlinesOrder.getTransactionDetails().getGrossAmt());
+        context.setDeclaredTotal(context.toMinor(airlinesOrder.getTransactionDetails().getGrossAmt()));
 
         List<AirlinesItem> items = airlinesOrder.getItems();
         for (int i = 0; i < items.size(); i++) {
@@ -27,36 +27,27 @@ public class AirlinesOrderValidator extends AbstractOrderValidator {
     }
 
     private void validateAirlinesItem(AirlinesItem item, int index, InvoiceValidationResponse response, ValidationContext context) {
-        double basePrice = item.getBasePrice();
-        PriceCalculation priceCalc = calculatePriceInfo(item.getPriceInfo());
-        double itemAddons = priceCalc.getAddons();
-
-        double subtotalBeforeTaxAndDiscounts = basePrice + itemAddons;
-        double subtotalAfterDiscounts = subtotalBeforeTaxAndDiscounts;
-        double tax = item.getTax() != null ? item.getTax() : 0.0;
-        double subtotalAfterTax = subtotalAfterDiscounts + tax;
-        double itemTotal = subtotalAfterTax;
-
-        String itemName = String.format("Flight (PNR: %s)", item.getPnrNumber());
-        ItemCalculation itemCalc = createItemCalculation(
-            itemName, index, item.getBasePrice(), 1,
-            subtotalBeforeTaxAndDiscounts, 0.0,
-            subtotalAfterDiscounts, tax, 0.0,
-            itemAddons, itemTotal, item.getTotalPrice()
+        long basePrice = context.toMinor(item.getBasePrice());
+        long itemAddons = calculateAddons(item.getPriceInfo(), context);
+
+        long subtotalBeforeTaxAndDiscounts = basePrice + itemAddons;
+        long subtotalAfterDiscounts = subtotalBeforeTaxAndDiscounts;
+        long tax = item.getTax() != null ? context.toMinor(item.getTax()) : 0;
+        long itemTotal = subtotalAfterDiscounts + tax;
+        long declaredTotal = context.toMinor(item.getTotalPrice());
+
+        boolean valid = context.addItem(
+            "Flight (PNR: " + item.getPnrNumber() + ")", index, basePrice, 1,
+            subtotalBeforeTaxAndDiscounts, 0,
+            subtotalAfterDiscounts, tax, 0,
+            itemAddons, itemTotal, declaredTotal
         );
-        context.addItemCalculation(itemCalc);
 
-        if (!itemCalc.getIsValid()) {
+        if (!valid) {
             response.getErrors().add(String.format(
                 "Flight %d (PNR: %s): Calculated total %.2f does not match declared total %.2f",
-                index, item.getPnrNumber(), itemTotal, item.getTotalPrice()));
+                index, item.getPnrNumber(), context.toMajor(itemTotal), item.getTotalPrice()));
             response.setIsValid(false);
         }
-
-        context.addToCalculatedTotal(itemTotal);
-        context.addToTotalTax(tax);
-        context.addToSubtotalBeforeTaxAndDiscounts(subtotalBeforeTaxAndDiscounts);
-        context.addToSubtotalAfterDiscounts(subtotalAfterDiscounts);
-        context.addToSubtotalAfterTax(subtotalAfterTax);
     }
 }
@@ -17,7 +17,7 @@ public class ProductOrderValidator extends AbstractOrderValidator {
     protected void validateOrderItems(BaseOrder order, InvoiceValidationResponse response, ValidationContext context) {
         ProductOrder productOrder = (ProductOrder) order;
         context.setCurrency(productOrder.getTransactionDetails().getCurrency());
-        context.setDeclaredTotal(productOrder.getTransactionDetails().getGrossAmt());
+        context.setDeclaredTotal(context.toMinor(productOrder.getTransactionDetails().getGrossAmt()));
 
         List<ProductItem> items = productOrder.getItems();
         for (int i = 0; i < items.size(); i++) {
@@ -28,57 +28,51 @@ public class ProductOrderValidator extends AbstractOrderValidator {
         // Validate order-level discounts
         if (productOrder.getTransactionDetails().getOrderLevelDiscounts() != null) {
             for (OrderLevelDiscount discount : productOrder.getTransactionDetails().getOrderLevelDiscounts()) {
-                context.addToCalculatedTotal(discount.getAmount());
-                context.addToTotalDiscounts(Math.abs(discount.getAmount()));
-                context.addToSubtotalAfterDiscounts(discount.getAmount());
+                long amount = context.toMinor(discount.getAmount());
+                context.addToCalculatedTotal(amount);
+                context.addToTotalDiscounts(Math.abs(amount));
+                context.addToSubtotalAfterDiscounts(amount);
             }
         }
 
         // Validate order summary if present
         if (productOrder.getOrderSummary() != null) {
             OrderSummary summary = productOrder.getOrderSummary();
-            if (Math.abs(summary.getSubtotal() - context.getCalculatedTotal()) > TOLERANCE) {
+            if (context.toMinor(summary.getSubtotal()) != context.getCalculatedTotal()) {
                 response.getWarnings().add(String.format(
                     "Order summary subtotal %.2f does not match calculated total %.2f",
-                    summary.getSubtotal(), context.getCalculatedTotal()));
+                    summary.getSubtotal(), context.toMajor(context.getCalculatedTotal())));
             }
         }
     }
 
     private void validateProductItem(ProductItem item, int index, InvoiceValidationResponse response, ValidationContext context) {
-        double basePrice = item.getBasePrice() * item.getQty();
-        PriceCalculation priceCalc = calculatePriceInfo(item.getPriceInfo());
-        double itemDiscounts = priceCalc.getDiscounts();
-        double itemAddons = priceCalc.getAddons();
+        long unitPrice = context.toMinor(item.getBasePrice());
+        long basePrice = unitPrice * item.getQty();
+        long itemDiscounts = calculateDiscounts(item.getPriceInfo(), context);
+        long itemAddons = calculateAddons(item.getPriceInfo(), context);
 
-        double subtotalBeforeTaxAndDiscounts = basePrice + itemAddons;
-        double subtotalAfterDiscounts = basePrice + itemAddons - itemDiscounts;
-        double tax = item.getTax() != null ? item.getTax() : 0.0;
-        double subtotalAfterTax = subtotalAfterDiscounts + tax;
-        double shippingCost = (item.getShippingDetails() != null && item.getShippingDetails().getCost() != null)
-            ? item.getShippingDetails().getCost() : 0.0;
-        double itemTotal = subtotalAfterTax + shippingCost;
+        long subtotalBeforeTaxAndDiscounts = basePrice + itemAddons;
+        long subtotalAfterDiscounts = basePrice + itemAddons - itemDiscounts;
+        long tax = item.getTax() != null ? context.toMinor(item.getTax()) : 0;
+        long subtotalAfterTax = subtotalAfterDiscounts + tax;
+        long shippingCost = (item.getShippingDetails() != null && item.getShippingDetails().getCost() != null)
+            ? context.toMinor(item.getShippingDetails().getCost()) : 0;
+        long itemTotal = subtotalAfterTax + shippingCost;
+        long declaredTotal = context.toMinor(item.getTotalPrice());
 
-        ItemCalculation itemCalc = createItemCalculation(
-            item.getName(), index, item.getBasePrice(), item.getQty(),
+        boolean valid = context.addItem(
+            item.getName(), index, unitPrice, item.getQty(),
             subtotalBeforeTaxAndDiscounts, itemDiscounts,
             subtotalAfterDiscounts, tax, shippingCost,
-            itemAddons, itemTotal, item.getTotalPrice()
+            itemAddons, itemTotal, declaredTotal
         );
-        context.addItemCalculation(itemCalc);
 
-        if (!itemCalc.getIsValid()) {
+        if (!valid) {
             response.getErrors().add(String.format(
                 "Item %d (%s): Calculated total %.2f does not match declared total %.2f",
-                index, item.getName(), itemTotal, item.getTotalPrice()));
+                index, item.getName(), context.toMajor(itemTotal), item.getTotalPrice()));
             response.setIsValid(false);
         }
-
-        context.addToCalculatedTotal(itemTotal);
-        context.addToTotalTax(tax);
-        context.addToTotalDiscounts(itemDiscounts);
-        context.addToSubtotalBeforeTaxAndDiscounts(subtotalBeforeTaxAndDiscounts);
-        context.addToSubtotalAfterDiscounts(subtotalAfterDiscounts);
-        context.addToSubtotalAfterTax(subtotalAfterTax);
     }
 }
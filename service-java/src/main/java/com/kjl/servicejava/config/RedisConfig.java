@@ -1,6 +1,7 @@
 package com.kjl.servicejava.config;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
@@ -44,7 +45,11 @@ public class RedisConfig {
         return template;
     }
 
+    /**
+     * Pub/sub listener container for node control messages; its lifecycle (start, stop on shutdown) is the context's.
+     */
     @Bean
+    @ConditionalOnProperty(name = "flight.store", havingValue = "redis", matchIfMissing = true)
     public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
         RedisMessageListenerContainer container = new RedisMessageListenerContainer();
         container.setConnectionFactory(connectionFactory);
@@ -1,11 +1,12 @@
 package com.kjl.servicejava.controller;
 
-import com.kjl.servicejava.service.FlightSearchService;
+import com.kjl.servicejava.service.SearchCoalescingService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
 @RestController
@@ -13,7 +14,7 @@ import java.util.Map;
 public class FlightSearchController {
 
     @Autowired
-    private FlightSearchService flightSearchService;
+    private SearchCoalescingService searchCoalescingService;
 
     @GetMapping("/search")
     public ResponseEntity<Map<String, String>> search(
@@ -23,18 +24,25 @@ public class FlightSearchController {
             @RequestParam String departure_date,
             @RequestParam(required = false) String return_date,
             @RequestParam(defaultValue = "1") int pax) {
-        String queryId = flightSearchService.generateQueryId(from, to, trip_type, departure_date, return_date, pax);
-        flightSearchService.startSearch(queryId, from, to, trip_type, departure_date, return_date, pax);
+        // Identical searches share one run: in flight, cached, or stale while revalidating
+        SearchCoalescingService.Ticket ticket =
+            searchCoalescingService.search(from, to, trip_type, departure_date, return_date, pax);
+        String queryId = ticket.getQueryId();
 
         Map<String, String> response = new HashMap<>();
         response.put("query_id", queryId);
+        response.put("search_status", ticket.getOutcome().name().toLowerCase(Locale.ROOT));
+        if (ticket.getClientToken() != null) {
+            response.put("client_token", ticket.getClientToken());
+        }
         response.put("ws_url", String.format("ws://localhost:3001/ws/result/stream?query_id=%s", queryId));
         return ResponseEntity.ok(response);
     }
 
     @PostMapping("/search/cancel")
-    public ResponseEntity<Map<String, String>> cancel(@RequestParam String query_id) {
-        flightSearchService.cancelSearch(query_id);
+    public ResponseEntity<Map<String, String>> cancel(@RequestParam String query_id,
+                                                      @RequestParam(required = false) String client_token) {
+        searchCoalescingService.cancel(query_id, client_token);
         Map<String, String> response = new HashMap<>();
         response.put("status", "cancelled");
         return ResponseEntity.ok(response);
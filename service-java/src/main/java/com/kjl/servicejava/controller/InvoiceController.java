@@ -1,11 +1,16 @@
 package com.kjl.servicejava.controller;
 
 import com.kjl.servicejava.model.InvoiceValidationResponse;
+import com.kjl.servicejava.service.BulkInvoiceValidationService;
 import com.kjl.servicejava.service.InvoiceValidationService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+
 @RestController
 @RequestMapping("/api")
 public class InvoiceController {
@@ -13,9 +18,23 @@ public class InvoiceController {
     @Autowired
     private InvoiceValidationService invoiceValidationService;
 
+    @Autowired
+    private BulkInvoiceValidationService bulkInvoiceValidationService;
+
     @PostMapping("/invoice/validate")
-    public ResponseEntity<InvoiceValidationResponse> validateInvoice(@RequestBody String body) {
+    public ResponseEntity<InvoiceValidationResponse> validateInvoice(@RequestBody byte[] body) {
         InvoiceValidationResponse response = invoiceValidationService.validateInvoice(body);
         return ResponseEntity.ok(response);
     }
+
+    /**
+     * Validates an NDJSON stream (or a JSON array) of invoices and streams one NDJSON result line per invoice.
+     * Results are written as they finish unless ordered=true.
+     */
+    @PostMapping("/invoice/validate/bulk")
+    public void validateInvoiceBulk(@RequestParam(value = "ordered", defaultValue = "false") boolean ordered,
+                                    HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(BulkInvoiceValidationService.NDJSON);
+        bulkInvoiceValidationService.validate(request.getInputStream(), response.getOutputStream(), ordered);
+    }
 }
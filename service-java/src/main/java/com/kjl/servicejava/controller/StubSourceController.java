@@ -0,0 +1,91 @@
+package com.kjl.servicejava.controller;
+
+import com.kjl.servicejava.model.FlightResult;
+import com.kjl.servicejava.service.FlightSourceAdapter;
+import com.kjl.servicejava.service.FlightSources;
+import com.kjl.servicejava.service.SimulatedFlightSource;
+import com.kjl.servicejava.util.FlightResultCodec;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Stub upstream source server (flight.sources.stub.enabled=true), so the HTTP source path can be load tested
+ * offline: each source answers like a real provider, with the latency distributions and error rate configured
+ * under flight.sources.stub.*, streaming its results as NDJSON.
+ */
+@RestController
+@RequestMapping("/stub/sources")
+@ConditionalOnProperty(name = "flight.sources.stub.enabled", havingValue = "true")
+public class StubSourceController {
+    private static final String NDJSON = "application/x-ndjson";
+
+    @Autowired
+    private FlightSources flightSources;
+
+    @Autowired
+    private FlightResultCodec flightResultCodec;
+
+    @GetMapping("/{source}/search")
+    public void search(@PathVariable String source,
+                       @RequestParam String from,
+                       @RequestParam String to,
+                       @RequestParam String trip_type,
+                       @RequestParam String departure_date,
+                       @RequestParam(required = false) String return_date,
+                       @RequestParam(defaultValue = "1") int pax,
+                       HttpServletResponse response) throws IOException {
+        SimulatedFlightSource stub = flightSources.getStub(source);
+        if (stub == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        OutputStream out = response.getOutputStream();
+        FlightSourceAdapter.Sink sink = new FlightSourceAdapter.Sink() {
+            @Override
+            public void expect(int results) {
+                Map<String, Object> header = new LinkedHashMap<>();
+                header.put("type", "expect");
+                header.put("total_expected", results);
+                // The first line commits the response, so the caller sees the headers after the first delay
+                write(flightResultCodec.encode(header));
+            }
+
+            @Override
+            public boolean accept(FlightResult result) {
+                return write(flightResultCodec.encode(result));
+            }
+
+            private boolean write(byte[] json) {
+                try {
+                    out.write(json);
+                    out.write('\n');
+                    out.flush();
+                    return true;
+                } catch (IOException e) {
+                    // Caller went away (cancelled, hedged or timed out)
+                    return false;
+                }
+            }
+        };
+
+        response.setContentType(NDJSON);
+        try {
+            stub.search(new FlightSourceAdapter.Request(from, to, trip_type, departure_date, return_date, pax), sink);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Simulated provider failure, drawn before anything was written
+            if (!response.isCommitted()) {
+                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            }
+        }
+    }
+}
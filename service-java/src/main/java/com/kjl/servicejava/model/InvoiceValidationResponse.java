@@ -1,5 +1,6 @@
 package com.kjl.servicejava.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 import java.util.List;
@@ -23,4 +24,9 @@ public class InvoiceValidationResponse {
 
     @JsonProperty("summary")
     private ValidationSummary summary;
+
+    /** Zero-based position of the invoice in a bulk upload; omitted for single validations. */
+    @JsonProperty("index")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long index;
 }
@@ -0,0 +1,258 @@
+package com.kjl.servicejava.repository;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Batching Redis writer for the flight message stream of a search (flight_stream:{queryId}).
+ * Each message is appended with one Lua script that atomically assigns the next sequence number, XADDs the message
+ * with ID {@code <seq>-0} (capped with MAXLEN), refreshes the TTL and optionally stores the result in the query's
+ * per-source result hash (search_result:{queryId}, field {source}:{index}).
+ * Releasing a finished query goes through the same queue, so it is applied after its last message.
+ * Messages queue up while a batch is in flight and the next batch is sent as one pipeline.
+ * A single writer thread keeps messages of a query in submission order.
+ * A failed batch is retried with backoff; once its attempts run out only its flight results are dropped, while
+ * control messages (source, completed, expired, cancelled) and releases go out ahead of the next batch, so readers
+ * still see every query end.
+ */
+@Repository
+@ConditionalOnProperty(name = "flight.store", havingValue = "redis", matchIfMissing = true)
+public class FlightResultWriter {
+    private static final long TTL_SECONDS = Duration.ofMinutes(30).toSeconds();
+    private static final byte[] TTL = String.valueOf(TTL_SECONDS).getBytes(StandardCharsets.UTF_8);
+    private static final long RETRY_BACKOFF_MILLIS = 100;
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 2000;
+
+    // KEYS: stream, result hash (optional). ARGV: payload, ttl, maxlen, result field. Returns the message's sequence number
+    private static final String APPEND_SCRIPT =
+        "local seq = 1\n" +
+        "local last = redis.call('XREVRANGE', KEYS[1], '+', '-', 'COUNT', 1)\n" +
+        "if last[1] then seq = tonumber(string.match(last[1][1], '^(%d+)')) + 1 end\n" +
+        "redis.call('XADD', KEYS[1], 'MAXLEN', '~', ARGV[3], seq .. '-0', 'd', ARGV[1])\n" +
+        "redis.call('EXPIRE', KEYS[1], ARGV[2])\n" +
+        "if KEYS[2] then\n" +
+        "  redis.call('HSET', KEYS[2], ARGV[4], ARGV[1])\n" +
+        "  redis.call('EXPIRE', KEYS[2], ARGV[2])\n" +
+        "end\n" +
+        "return seq";
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final BlockingQueue<Append> queue = new LinkedBlockingQueue<>();
+    private final int maxBatch;
+    private final int maxAttempts;
+    private final byte[] maxLen;
+    private final Thread writerThread;
+    private volatile String scriptSha;
+    private volatile boolean running = true;
+
+    @Autowired
+    public FlightResultWriter(RedisTemplate<String, String> redisTemplate,
+                              @Value("${flight.redis.writer.max-batch:256}") int maxBatch,
+                              @Value("${flight.redis.writer.max-attempts:5}") int maxAttempts,
+                              @Value("${flight.stream.max-len:1000}") int maxLen) {
+        this.redisTemplate = redisTemplate;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.maxLen = String.valueOf(maxLen).getBytes(StandardCharsets.UTF_8);
+        this.writerThread = Thread.ofPlatform().name("flight-result-writer").daemon().start(this::run);
+    }
+
+    /**
+     * Stream key holding a query's messages.
+     */
+    public static String streamKey(String queryId) {
+        return "flight_stream:" + queryId;
+    }
+
+    /**
+     * Per-source result hash of a query.
+     */
+    public static String resultKey(String queryId) {
+        return "search_result:" + queryId;
+    }
+
+    /**
+     * Appends a flight result to the query's stream and stores it in search_result:{queryId} under {source}:{index}.
+     */
+    public void appendResult(String queryId, String source, int index, byte[] resultJson) {
+        queue.add(new Append(queryId, source + ":" + index, resultJson, 0));
+    }
+
+    /**
+     * Appends a control message (completed, cancelled, ...) to the query's stream.
+     */
+    public void append(String queryId, byte[] messageJson) {
+        queue.add(new Append(queryId, null, messageJson, 0));
+    }
+
+    /**
+     * Deletes the query's per-source result hash and lets its stream expire after {@code retention}.
+     */
+    public void release(String queryId, Duration retention) {
+        queue.add(new Append(queryId, null, null, Math.max(1, retention.toSeconds())));
+    }
+
+    /**
+     * Number of messages waiting to be written.
+     */
+    public int getPending() {
+        return queue.size();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        writerThread.interrupt();
+    }
+
+    private void run() {
+        List<Append> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    batch.add(queue.take());
+                }
+            } catch (InterruptedException e) {
+                if (!running) {
+                    queue.drainTo(batch);
+                    if (batch.isEmpty()) {
+                        return;
+                    }
+                } else {
+                    continue;
+                }
+            }
+            queue.drainTo(batch, maxBatch - batch.size());
+            List<Append> kept = writeWithRetry(batch);
+            batch.clear();
+            // Written first with the next batch
+            batch.addAll(kept);
+        }
+    }
+
+    /**
+     * Writes a batch, retrying it with backoff. A retry may append a message twice if Redis applied part of the
+     * batch before failing. Returns what to keep once the attempts run out (or on shutdown): the control messages
+     * and releases; flight results are dropped.
+     */
+    private List<Append> writeWithRetry(List<Append> batch) {
+        long backoffMillis = RETRY_BACKOFF_MILLIS;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                write(batch);
+                return List.of();
+            } catch (Exception e) {
+                if (attempt >= maxAttempts || !running) {
+                    List<Append> kept = new ArrayList<>();
+                    for (Append append : batch) {
+                        if (append.resultField == null) {
+                            kept.add(append);
+                        }
+                    }
+                    System.out.println("Failed to write " + batch.size() + " flight messages to Redis, dropped "
+                        + (batch.size() - kept.size()) + " results: " + e.getMessage());
+                    return kept;
+                }
+            }
+            try {
+                Thread.sleep(backoffMillis);
+            } catch (InterruptedException e) {
+                // Stopping: one last attempt
+            }
+            backoffMillis = Math.min(backoffMillis * 2, MAX_RETRY_BACKOFF_MILLIS);
+        }
+    }
+
+    private void write(List<Append> batch) {
+        String sha = scriptSha;
+        if (sha == null) {
+            sha = loadScript();
+        }
+        try {
+            executeBatch(batch, sha);
+        } catch (Exception e) {
+            if (!isNoScript(e)) {
+                throw e;
+            }
+            // Script cache was flushed (restart, failover); every call in the pipeline failed the same way
+            executeBatch(batch, loadScript());
+        }
+    }
+
+    private void executeBatch(List<Append> batch, String sha) {
+        if (batch.size() == 1) {
+            redisTemplate.execute((RedisCallback<Long>) connection -> evalAppend(connection, sha, batch.get(0)));
+            return;
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Append append : batch) {
+                evalAppend(connection, sha, append);
+            }
+            return null;
+        });
+    }
+
+    private Long evalAppend(RedisConnection connection, String sha, Append append) {
+        byte[] stream = streamKey(append.queryId).getBytes(StandardCharsets.UTF_8);
+        if (append.payload == null) {
+            connection.keyCommands().del(resultKey(append.queryId).getBytes(StandardCharsets.UTF_8));
+            connection.keyCommands().expire(stream, append.retentionSeconds);
+            return null;
+        }
+        if (append.resultField == null) {
+            return connection.scriptingCommands().evalSha(sha, ReturnType.INTEGER, 1,
+                stream, append.payload, TTL, maxLen);
+        }
+        byte[] resultKey = resultKey(append.queryId).getBytes(StandardCharsets.UTF_8);
+        return connection.scriptingCommands().evalSha(sha, ReturnType.INTEGER, 2,
+            stream, resultKey, append.payload, TTL, maxLen, append.resultField.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String loadScript() {
+        byte[] script = APPEND_SCRIPT.getBytes(StandardCharsets.UTF_8);
+        String sha = redisTemplate.execute((RedisCallback<String>) connection ->
+            connection.scriptingCommands().scriptLoad(script));
+        scriptSha = sha;
+        return sha;
+    }
+
+    private static boolean isNoScript(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t.getMessage() != null && t.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A queued write: a message (with its result field for flight results), or a release when payload is null.
+     */
+    private static final class Append {
+        private final String queryId;
+        private final String resultField;
+        private final byte[] payload;
+        private final long retentionSeconds;
+
+        private Append(String queryId, String resultField, byte[] payload, long retentionSeconds) {
+            this.queryId = queryId;
+            this.resultField = resultField;
+            this.payload = payload;
+            this.retentionSeconds = retentionSeconds;
+        }
+    }
+}
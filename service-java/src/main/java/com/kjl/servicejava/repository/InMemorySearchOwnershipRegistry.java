@@ -0,0 +1,71 @@
+package com.kjl.servicejava.repository;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-node {@link SearchOwnershipRegistry} (flight.store=memory): this node owns every search it claimed, and
+ * control messages addressed to it are handed straight to its listener.
+ */
+@Repository
+@ConditionalOnProperty(name = "flight.store", havingValue = "memory")
+public class InMemorySearchOwnershipRegistry implements SearchOwnershipRegistry {
+    private final String nodeId = UUID.randomUUID().toString();
+    // Query ID -> lease end (System.nanoTime)
+    private final ConcurrentMap<String, Long> claims = new ConcurrentHashMap<>();
+    // One counter for every key: generations only need to be unique
+    private final AtomicLong generations = new AtomicLong();
+    private volatile Listener listener;
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public long nextGeneration(String searchKey) {
+        return generations.incrementAndGet();
+    }
+
+    @Override
+    public void claim(String queryId, Duration lease) {
+        claims.put(queryId, System.nanoTime() + lease.toNanos());
+    }
+
+    @Override
+    public void release(String queryId) {
+        claims.remove(queryId);
+    }
+
+    @Override
+    public String getOwner(String queryId) {
+        Long leaseEnd = claims.get(queryId);
+        if (leaseEnd == null) {
+            return null;
+        }
+        if (System.nanoTime() - leaseEnd >= 0) {
+            claims.remove(queryId, leaseEnd);
+            return null;
+        }
+        return nodeId;
+    }
+
+    @Override
+    public void send(String targetNodeId, String operation, String queryId, String argument) {
+        Listener current = listener;
+        if (current != null && nodeId.equals(targetNodeId)) {
+            current.onControl(operation, queryId, argument);
+        }
+    }
+
+    @Override
+    public void listen(Listener listener) {
+        this.listener = listener;
+    }
+}
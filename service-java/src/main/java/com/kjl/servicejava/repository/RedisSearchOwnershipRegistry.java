@@ -0,0 +1,114 @@
+package com.kjl.servicejava.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * {@link SearchOwnershipRegistry} on Redis.
+ * Run generations are counters {@code search_generation:{searchKey}}, kept a day past their last use (far longer
+ * than any run's log), so a generation is never handed out twice while its query ID is still in use.
+ * A claim is {@code search_owner:{queryId}} holding the owner's node ID with the lease as its TTL; it is released
+ * with a compare-and-delete so a node never drops another node's claim. Each node subscribes once, at startup,
+ * to its own control channel {@code flight_control:{nodeId}}; messages are {@code <operation>:<queryId>[:<argument>]}.
+ */
+@Repository
+@ConditionalOnProperty(name = "flight.store", havingValue = "redis", matchIfMissing = true)
+public class RedisSearchOwnershipRegistry implements SearchOwnershipRegistry {
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+        "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end\n" +
+        "return 0", Long.class);
+    private static final RedisScript<Long> GENERATION_SCRIPT = new DefaultRedisScript<>(
+        "local generation = redis.call('INCR', KEYS[1])\n" +
+        "redis.call('EXPIRE', KEYS[1], ARGV[1])\n" +
+        "return generation", Long.class);
+    private static final Duration GENERATION_RETENTION = Duration.ofDays(1);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final String nodeId;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    public RedisSearchOwnershipRegistry(RedisTemplate<String, String> redisTemplate,
+                                        RedisMessageListenerContainer listenerContainer,
+                                        @Value("${flight.node-id:}") String nodeId) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.nodeId = nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId;
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public long nextGeneration(String searchKey) {
+        Long generation = redisTemplate.execute(GENERATION_SCRIPT, List.of("search_generation:" + searchKey),
+            String.valueOf(GENERATION_RETENTION.toSeconds()));
+        if (generation == null) {
+            throw new IllegalStateException("No generation returned for search " + searchKey);
+        }
+        return generation;
+    }
+
+    @Override
+    public void claim(String queryId, Duration lease) {
+        redisTemplate.opsForValue().set(ownerKey(queryId), nodeId, lease);
+    }
+
+    @Override
+    public void release(String queryId) {
+        redisTemplate.execute(RELEASE_SCRIPT, List.of(ownerKey(queryId)), nodeId);
+    }
+
+    @Override
+    public String getOwner(String queryId) {
+        return redisTemplate.opsForValue().get(ownerKey(queryId));
+    }
+
+    @Override
+    public void send(String targetNodeId, String operation, String queryId, String argument) {
+        String message = operation + ":" + queryId;
+        redisTemplate.convertAndSend(controlChannel(targetNodeId), argument != null ? message + ":" + argument : message);
+    }
+
+    @Override
+    public void listen(Listener listener) {
+        listenerContainer.addMessageListener((Message message, byte[] pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            int separator = body.indexOf(':');
+            if (separator <= 0) {
+                return;
+            }
+            // Query IDs never contain ':', so a second one starts the argument
+            int argumentSeparator = body.indexOf(':', separator + 1);
+            if (argumentSeparator < 0) {
+                listener.onControl(body.substring(0, separator), body.substring(separator + 1), null);
+            } else {
+                listener.onControl(body.substring(0, separator), body.substring(separator + 1, argumentSeparator),
+                    body.substring(argumentSeparator + 1));
+            }
+        }, new ChannelTopic(controlChannel(nodeId)));
+    }
+
+    private static String ownerKey(String queryId) {
+        return "search_owner:" + queryId;
+    }
+
+    private static String controlChannel(String nodeId) {
+        return "flight_control:" + nodeId;
+    }
+}
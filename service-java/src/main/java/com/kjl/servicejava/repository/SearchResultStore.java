@@ -0,0 +1,68 @@
+package com.kjl.servicejava.repository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ordered, durable log of the messages (flight results, completion, cancellation) of each search, and the broker
+ * readers block on for new messages. Every message gets a per-query sequence number starting at 1; sequence numbers
+ * are the read cursors, so a reader that has seen {@code n} messages continues with everything after {@code n}.
+ * Selected with flight.store: redis (Redis Streams, default) or memory (single node, no Redis).
+ */
+public interface SearchResultStore {
+
+    /**
+     * Appends a flight result and keeps it with the query's per-source results.
+     */
+    void appendResult(String queryId, String source, int index, byte[] resultJson);
+
+    /**
+     * Appends a control message (completed, cancelled, ...).
+     */
+    void append(String queryId, byte[] messageJson);
+
+    /**
+     * Messages with a sequence number greater than {@code afterSeq}, oldest first; at most {@code maxCount} of them
+     * when positive.
+     */
+    List<Entry> read(String queryId, long afterSeq, int maxCount);
+
+    /**
+     * Sequence number of the newest message, 0 if there is none.
+     */
+    long lastSeq(String queryId);
+
+    /**
+     * Waits up to {@code timeout} until any of the queries has messages after its cursor and returns them per query.
+     * Returns early with an empty map after {@link #wakeReaders()}. Meant for a single reader thread.
+     */
+    Map<String, List<Entry>> readBlocking(Map<String, Long> cursors, Duration timeout);
+
+    /**
+     * Makes a pending {@link #readBlocking} call on this node return so it can pick up new cursors.
+     */
+    void wakeReaders();
+
+    /**
+     * Releases a query whose log has ended: drops its per-source results and keeps its message log only for
+     * {@code retention}. Applied after every message appended before it.
+     */
+    void release(String queryId, Duration retention);
+
+    /**
+     * One stored message.
+     */
+    final class Entry {
+        private final long seq;
+        private final byte[] payload;
+
+        public Entry(long seq, byte[] payload) {
+            this.seq = seq;
+            this.payload = payload;
+        }
+
+        public long getSeq() { return seq; }
+        public byte[] getPayload() { return payload; }
+    }
+}
@@ -0,0 +1,31 @@
+package com.kjl.servicejava.repository;
+
+/**
+ * Shared per-source token buckets, so an upstream provider's rate limit (per API key) is spread over every node
+ * instead of each node calling it as fast as its own searches arrive.
+ * Selected with flight.store: redis (shared by every node, default) or memory (single node).
+ */
+public interface SourceQuotaStore {
+
+    /**
+     * Takes up to {@code permits} tokens from the source's bucket, which refills at {@code ratePerSecond} up to
+     * {@code burst} tokens. Grants fewer (or none) when the bucket runs low.
+     */
+    Grant take(String source, int permits, double ratePerSecond, long burst);
+
+    /**
+     * Tokens granted by one {@link #take}, and when none were, how long until the next one is available.
+     */
+    final class Grant {
+        private final int granted;
+        private final long retryAfterMillis;
+
+        public Grant(int granted, long retryAfterMillis) {
+            this.granted = granted;
+            this.retryAfterMillis = retryAfterMillis;
+        }
+
+        public int getGranted() { return granted; }
+        public long getRetryAfterMillis() { return retryAfterMillis; }
+    }
+}
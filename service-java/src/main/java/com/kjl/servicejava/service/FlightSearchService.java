@@ -1,56 +1,99 @@
 package com.kjl.servicejava.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.kjl.servicejava.repository.RedisRepository;
+import com.kjl.servicejava.model.FlightResult;
+import com.kjl.servicejava.repository.SearchOwnershipRegistry;
+import com.kjl.servicejava.repository.SearchResultStore;
+import com.kjl.servicejava.util.FlightResultCodec;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.security.MessageDigest;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
 
 /**
  * Service for flight search operations using Repository pattern for data access.
  */
 @Service
 public class FlightSearchService {
-    private static final int EXPECTED_FLIGHTS = 24;
-    private final ObjectMapper objectMapper = new ObjectMapper();
-    private final ExecutorService executorService = Executors.newCachedThreadPool();
-    private final Map<String, CompletableFuture<Void>> activeSearches = new ConcurrentHashMap<>();
-    private final RedisRepository redisRepository;
-    private final PubsubListenerService pubsubListenerService;
+    private static final Duration CANCELLED_RETENTION = Duration.ofMinutes(1);
+    // Ownership outlives the search deadline by this much, for the join and the final appends
+    private static final Duration OWNERSHIP_GRACE = Duration.ofSeconds(10);
+    private final ExecutorService executorService;
+    private final Map<String, SearchLifecycle> activeSearches = new ConcurrentHashMap<>();
+    private final SearchResultStore searchResultStore;
+    private final SearchOwnershipRegistry searchOwnershipRegistry;
+    private final SourceConcurrencyLimiter sourceConcurrencyLimiter;
+    private final SourceRateLimiter sourceRateLimiter;
+    private final FlightSources flightSources;
+    private final SourceCircuitBreaker sourceCircuitBreaker;
+    private final SourceLatencyStats sourceLatencyStats;
+    private final FlightResultCodec flightResultCodec;
+    private final Duration searchDeadline;
+    private final Duration finishedRetention;
+    private final int earlyStopCheapest;
+    private final Duration earlyStopWindow;
 
     @Autowired
-    public FlightSearchService(RedisRepository redisRepository, PubsubListenerService pubsubListenerService) {
-        this.redisRepository = redisRepository;
-        this.pubsubListenerService = pubsubListenerService;
+    public FlightSearchService(SearchResultStore searchResultStore,
+                               SearchOwnershipRegistry searchOwnershipRegistry,
+                               SourceConcurrencyLimiter sourceConcurrencyLimiter,
+                               SourceRateLimiter sourceRateLimiter,
+                               FlightSources flightSources,
+                               SourceCircuitBreaker sourceCircuitBreaker,
+                               SourceLatencyStats sourceLatencyStats,
+                               FlightResultCodec flightResultCodec,
+                               @Qualifier("flightSearchExecutor") ExecutorService executorService,
+                               @Value("${flight.search.deadline-ms:30000}") long searchDeadlineMillis,
+                               @Value("${flight.search.cache.ttl-ms:60000}") long cacheTtlMillis,
+                               @Value("${flight.search.cache.stale-ms:300000}") long cacheStaleMillis,
+                               @Value("${flight.search.early-stop.cheapest:0}") int earlyStopCheapest,
+                               @Value("${flight.search.early-stop.window-ms:2000}") long earlyStopWindowMillis) {
+        this.searchResultStore = searchResultStore;
+        this.searchOwnershipRegistry = searchOwnershipRegistry;
+        this.sourceConcurrencyLimiter = sourceConcurrencyLimiter;
+        this.sourceRateLimiter = sourceRateLimiter;
+        this.flightSources = flightSources;
+        this.sourceCircuitBreaker = sourceCircuitBreaker;
+        this.sourceLatencyStats = sourceLatencyStats;
+        this.flightResultCodec = flightResultCodec;
+        this.executorService = executorService;
+        this.searchDeadline = Duration.ofMillis(searchDeadlineMillis);
+        // A finished run is served from its log for as long as the search cache may hand it out
+        this.finishedRetention = Duration.ofMillis(cacheTtlMillis + cacheStaleMillis);
+        this.earlyStopCheapest = earlyStopCheapest;
+        this.earlyStopWindow = Duration.ofMillis(earlyStopWindowMillis);
     }
 
-    private final String[] sources = {"kiwi", "trip", "12go"};
-    private final String[] departureTimes = {"06:00", "08:30", "10:15", "12:00", "14:30", "16:45", "18:20", "20:00", "22:30"};
-
-    private final Map<String, List<String>> airlines = new HashMap<>() {{
-        put("kiwi", Arrays.asList("Lion Air", "Garuda", "AirAsia", "Batik Air", "Citilink"));
-        put("trip", Arrays.asList("Singapore Airlines", "Malaysia Airlines", "Thai Airways", "Vietnam Airlines", "Philippine Airlines"));
-        put("12go", Arrays.asList("Cebu Pacific", "Jetstar", "Tiger Air", "Scoot", "AirAsia"));
-    }};
+    /**
+     * Canonical key of a search: identical searches (case, whitespace and a return date on one-way trips aside)
+     * get the same key.
+     */
+    public static String searchKey(String from, String to, String tripType, String departureDate, String returnDate, int pax) {
+        String trip = tripType != null ? tripType.trim().toLowerCase(Locale.ROOT) : "";
+        String ret = returnDate != null && !"oneway".equals(trip) ? returnDate.trim() : "";
+        return normalize(from) + ":" + normalize(to) + ":" + trip + ":"
+            + (departureDate != null ? departureDate.trim() : "") + ":" + ret + ":" + pax;
+    }
 
-    private final List<Map<String, Object>> commonFlights = Arrays.asList(
-        new HashMap<>() {{ put("airline", "AirAsia"); put("flight_number", "AK123"); put("departure_time", "10:15"); put("base_price", 750000); }},
-        new HashMap<>() {{ put("airline", "Garuda"); put("flight_number", "GA456"); put("departure_time", "14:30"); put("base_price", 1200000); }},
-        new HashMap<>() {{ put("airline", "Lion Air"); put("flight_number", "JT789"); put("departure_time", "08:30"); put("base_price", 650000); }}
-    );
+    private static String normalize(String airport) {
+        return airport != null ? airport.trim().toUpperCase(Locale.ROOT) : "";
+    }
 
-    public String generateQueryId(String from, String to, String tripType, String departureDate, String returnDate, int pax) {
+    /**
+     * Query ID of one run (generation) of a search: a SHA-256 of its canonical key and generation.
+     */
+    public String generateQueryId(String searchKey, long generation) {
         try {
-            String input = from + ":" + to + ":" + tripType + ":" + departureDate + ":" + 
-                          (returnDate != null ? returnDate : "") + ":" + pax + ":" + System.currentTimeMillis();
+            String input = searchKey + ":" + generation;
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
             byte[] hash = digest.digest(input.getBytes());
             StringBuilder hexString = new StringBuilder();
@@ -68,156 +111,263 @@ public class FlightSearchService {
     }
 
     public void startSearch(String queryId, String from, String to, String tripType, String departureDate, String returnDate, int pax) {
-        // Start background listener that writes pubsub messages to Redis
-        pubsubListenerService.startListener(queryId);
-        
-        CompletableFuture<Void> searchFuture = CompletableFuture.runAsync(() -> {
-            runAggregator(queryId, from, to, tripType, departureDate, returnDate, pax);
-        }, executorService);
-
-        activeSearches.put(queryId, searchFuture);
-        searchFuture.whenComplete((result, throwable) -> {
-            activeSearches.remove(queryId);
-        });
+        startSearch(queryId, from, to, tripType, departureDate, returnDate, pax, null, null);
+    }
+
+    /**
+     * Starts a search; {@code onFinished}, if given, is called with its final state once it is over: COMPLETED,
+     * EXPIRED (stopped by its deadline, with partial results) or CANCELLED. {@code weight}, if given, is read whenever the search waits for source
+     * quota and sets its share against other waiting searches (1 by default).
+     */
+    public void startSearch(String queryId, String from, String to, String tripType, String departureDate, String returnDate,
+                            int pax, Consumer<SearchLifecycle.State> onFinished, DoubleSupplier weight) {
+        // Every source task of this search lives in one scope bounded by the global search deadline
+        SearchScope scope = new SearchScope(executorService, searchDeadline);
+        SearchLifecycle lifecycle = new SearchLifecycle(queryId, flightSources.getNames(), scope, searchResultStore, flightResultCodec,
+            earlyStopCheapest);
+        activeSearches.put(queryId, lifecycle);
+        try {
+            // Claimed before the query ID is handed out, so a cancel landing on any node can find this one
+            searchOwnershipRegistry.claim(queryId, searchDeadline.plus(OWNERSHIP_GRACE));
+
+            executorService.submit(() -> {
+                try (scope) {
+                    runAggregator(lifecycle, queryId, from, to, tripType, departureDate, returnDate, pax,
+                        weight != null ? weight : () -> 1);
+                } finally {
+                    settle(lifecycle, queryId, onFinished);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Never started (claim failed, or rejected by the executor while shutting down): settle it here instead
+            scope.close();
+            settle(lifecycle, queryId, onFinished);
+            throw e;
+        }
+    }
+
+    /**
+     * Ends a search's bookkeeping once its aggregator is over (or could not start): a run left STARTED is cancelled,
+     * then the claim and log are released and {@code onFinished} is called with the final state.
+     */
+    private void settle(SearchLifecycle lifecycle, String queryId, Consumer<SearchLifecycle.State> onFinished) {
+        activeSearches.remove(queryId, lifecycle);
+        SearchLifecycle.State state = lifecycle.getState();
+        if (state == SearchLifecycle.State.STARTED) {
+            // Aggregator failed or was interrupted before settling the run
+            lifecycle.cancel();
+            state = SearchLifecycle.State.CANCELLED;
+        }
+        try {
+            searchOwnershipRegistry.release(queryId);
+        } catch (RuntimeException e) {
+            // The claim's lease runs out on its own
+            System.out.println("Failed to release ownership of search " + queryId + ": " + e.getMessage());
+        }
+        // Nothing reads the per-source results of a finished run; its log lives as long as it can be served
+        searchResultStore.release(queryId,
+            state == SearchLifecycle.State.CANCELLED ? CANCELLED_RETENTION : finishedRetention);
+        if (onFinished != null) {
+            onFinished.accept(state);
+        }
     }
 
+    /**
+     * Lifecycle state of a search running on this node, or null if it is not running here (finished or unknown).
+     */
+    public SearchLifecycle.State getState(String queryId) {
+        SearchLifecycle lifecycle = activeSearches.get(queryId);
+        return lifecycle != null ? lifecycle.getState() : null;
+    }
+
+    /**
+     * Node running a search (this one included), or null if no node owns it any more.
+     */
+    public String getOwner(String queryId) {
+        return activeSearches.containsKey(queryId) ? searchOwnershipRegistry.getNodeId()
+            : searchOwnershipRegistry.getOwner(queryId);
+    }
+
+    /**
+     * Cancels a search running on this node. For a search no node owns any more (finished, or its owner is gone),
+     * the log is marked cancelled unless it has already ended. Searches owned by another node are left to it.
+     */
     public void cancelSearch(String queryId) {
-        CompletableFuture<Void> future = activeSearches.remove(queryId);
-        if (future != null) {
-            future.cancel(true);
-        }
-        
-        // Stop pubsub listener
-        pubsubListenerService.stopListener(queryId);
-        
-        // Clean up Redis data
-        redisRepository.delete("search_result:" + queryId);
-        redisRepository.deleteFlightResults(queryId);
-        
+        // Interrupts every source task of the search; nothing is appended after the cancellation
+        SearchLifecycle lifecycle = activeSearches.get(queryId);
+        if (lifecycle != null) {
+            lifecycle.cancel();
+            return;
+        }
+        if (searchOwnershipRegistry.getOwner(queryId) != null || isEnded(queryId)) {
+            return;
+        }
+        FlightResult cancelMsg = new FlightResult();
+        cancelMsg.setType("cancelled");
+        cancelMsg.setProgress(0);
+        cancelMsg.setStatus("cancelled");
+        cancelMsg.setMessage("Search was cancelled");
+        searchResultStore.append(queryId, flightResultCodec.encode(cancelMsg));
+        searchResultStore.release(queryId, CANCELLED_RETENTION);
+    }
+
+    /**
+     * Ends a search running on this node as expired, stopping its sources. Returns false if it is not running here.
+     */
+    public boolean expireSearch(String queryId) {
+        SearchLifecycle lifecycle = activeSearches.get(queryId);
+        return lifecycle != null && lifecycle.expire();
+    }
+
+    private boolean isEnded(String queryId) {
+        long lastSeq = searchResultStore.lastSeq(queryId);
+        if (lastSeq == 0) {
+            return false;
+        }
+        List<SearchResultStore.Entry> last = searchResultStore.read(queryId, lastSeq - 1, 1);
+        return !last.isEmpty() && SearchLifecycle.isTerminal(flightResultCodec.peekType(last.get(0).getPayload()));
+    }
+
+    private void runAggregator(SearchLifecycle lifecycle, String queryId, String from, String to, String tripType,
+                               String departureDate, String returnDate, int pax, DoubleSupplier weight) {
+        SearchScope scope = lifecycle.getScope();
+        FlightSourceAdapter.Request request =
+            new FlightSourceAdapter.Request(from, to, tripType, departureDate, returnDate, pax);
+
+        for (FlightSourceAdapter adapter : flightSources.getAdapters()) {
+            String source = adapter.getName();
+            // Derived from the source's recent completion times, so one degraded source does not hold every search
+            Duration timeout = flightSources.getAdaptiveTimeout(source);
+            scope.fork(source, timeout, () -> fetchFromSource(lifecycle, queryId, adapter, request, timeout, weight));
+        }
+        Future<?> settleWatch = earlyStopCheapest > 0 ? executorService.submit(() -> watchCheapest(lifecycle, queryId)) : null;
+
+        // Wait for all sources to complete, interrupting any that run past their timeout or the search deadline
         try {
-            Map<String, Object> cancelMsg = new HashMap<>();
-            cancelMsg.put("type", "cancelled");
-            
-            // Publish cancellation (for WebSocket/SSE)
-            redisRepository.publish("flight:" + queryId, objectMapper.writeValueAsString(cancelMsg));
-            
-            // Write cancellation to Redis for long polling
-            redisRepository.pushFlightResult(queryId, objectMapper.writeValueAsString(cancelMsg));
-        } catch (Exception e) {
-            // Ignore
+            scope.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            if (settleWatch != null) {
+                settleWatch.cancel(true);
+            }
+        }
+
+        if (lifecycle.finish() == SearchLifecycle.State.EXPIRED) {
+            System.out.println("Search " + queryId + " reached its deadline, remaining sources were stopped");
         }
     }
 
-    private void runAggregator(String queryId, String from, String to, String tripType, String departureDate, String returnDate, int pax) {
-        Random random = new Random();
-        int expectedTotalFlights = sources.length * (8 + random.nextInt(3)); // 8-10 flights per source
-        int[] totalFlightsSent = {0};
-
-        List<CompletableFuture<Void>> sourceFutures = new ArrayList<>();
-
-        for (String source : sources) {
-            CompletableFuture<Void> sourceFuture = CompletableFuture.runAsync(() -> {
-                int numFlights = 8 + random.nextInt(3); // Random between 8-10 flights
-
-                for (int i = 0; i < numFlights; i++) {
-                    try {
-                        // Random delay between 10-710 milliseconds
-                        Thread.sleep(10 + random.nextInt(700));
-
-                        Map<String, Object> result;
-
-                        // 30% chance to offer a common flight
-                        if (random.nextDouble() < 0.3 && i < commonFlights.size()) {
-                            Map<String, Object> commonFlight = commonFlights.get(i);
-                            int priceVariation = random.nextInt(100000) - 50000; // ±50k variation
-                            int price = ((Number) commonFlight.get("base_price")).intValue() + priceVariation;
-                            if (price < 500000) {
-                                price = 500000;
-                            }
-
-                            // Adjust price based on PAX
-                            int totalPrice = price * pax;
-                            
-                            result = new HashMap<>();
-                            result.put("source", source);
-                            result.put("airline", commonFlight.get("airline"));
-                            result.put("flight_number", commonFlight.get("flight_number"));
-                            result.put("departure_time", commonFlight.get("departure_time"));
-                            result.put("price", totalPrice);
-                            result.put("from", from);
-                            result.put("to", to);
-                            result.put("departure_date", departureDate);
-                            result.put("return_date", returnDate);
-                            result.put("trip_type", tripType);
-                            result.put("pax", pax);
-                            result.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
-                            result.put("seat_class", Arrays.asList("Economy", "Business", "Premium Economy").get(random.nextInt(3)));
-                            result.put("affiliate_link", String.format("https://%s.com/affiliate?source=flight_search&from=%s&to=%s&flight=%s&price=%d&pax=%d&ref=YOUR_AFFILIATE_ID",
-                                source, from, to, commonFlight.get("flight_number"), totalPrice, pax));
-                            result.put("booking_url", String.format("https://%s.com/flights/%s-%s/%s?departure_date=%s&pax=%d",
-                                source, from, to, commonFlight.get("flight_number"), departureDate, pax));
-                            result.put("is_common", true);
-                        } else {
-                            String departureTime = departureTimes[random.nextInt(departureTimes.length)];
-                            String airline = airlines.get(source).get(random.nextInt(airlines.get(source).size()));
-                            int basePrice = 500000 + random.nextInt(2000000);
-                            String flightNumber = String.format("%s%d", source.substring(0, 2).toUpperCase(), 100 + random.nextInt(900));
-
-                            // Adjust price based on PAX
-                            int totalPrice = basePrice * pax;
-                            
-                            result = new HashMap<>();
-                            result.put("source", source);
-                            result.put("airline", airline);
-                            result.put("flight_number", flightNumber);
-                            result.put("departure_time", departureTime);
-                            result.put("price", totalPrice);
-                            result.put("from", from);
-                            result.put("to", to);
-                            result.put("departure_date", departureDate);
-                            result.put("return_date", returnDate);
-                            result.put("trip_type", tripType);
-                            result.put("pax", pax);
-                            result.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
-                            result.put("seat_class", Arrays.asList("Economy", "Business", "Premium Economy").get(random.nextInt(3)));
-                            result.put("affiliate_link", String.format("https://%s.com/affiliate?source=flight_search&from=%s&to=%s&flight=%s&price=%d&pax=%d&ref=YOUR_AFFILIATE_ID",
-                                source, from, to, flightNumber, totalPrice, pax));
-                            result.put("booking_url", String.format("https://%s.com/flights/%s-%s/%s?departure_date=%s&pax=%d",
-                                source, from, to, flightNumber, departureDate, pax));
-                            result.put("is_common", false);
-                        }
-
-                        String resultJson = objectMapper.writeValueAsString(result);
-                        redisRepository.publish("flight:" + queryId, resultJson);
-                        redisRepository.setSearchResult(queryId, source, i, resultJson);
-
-                        synchronized (totalFlightsSent) {
-                            totalFlightsSent[0]++;
-                            int currentTotal = totalFlightsSent[0];
-
-                            if (currentTotal >= expectedTotalFlights) {
-                                Map<String, Object> completionMsg = new HashMap<>();
-                                completionMsg.put("type", "completed");
-                                completionMsg.put("progress", 100);
-                                completionMsg.put("status", "completed");
-                                completionMsg.put("message", "All flights found");
-                                completionMsg.put("total_flights", currentTotal);
-                                redisRepository.publish("flight:" + queryId, objectMapper.writeValueAsString(completionMsg));
-                            }
-                        }
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        return;
-                    } catch (Exception e) {
-                        // Continue on error
-                    }
+    /**
+     * Completes the search early once its cheapest results have settled (flight.search.early-stop.*).
+     */
+    private void watchCheapest(SearchLifecycle lifecycle, String queryId) {
+        try {
+            long wait;
+            while ((wait = lifecycle.settleEarly(earlyStopWindow.toNanos())) > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            if (wait == 0) {
+                System.out.println("Search " + queryId + " settled early, remaining sources were stopped");
+            }
+        } catch (InterruptedException e) {
+            // Every source ended first
+        }
+    }
+
+    private void fetchFromSource(SearchLifecycle lifecycle, String queryId, FlightSourceAdapter adapter,
+                                 FlightSourceAdapter.Request request, Duration timeout, DoubleSupplier weight) {
+        String source = adapter.getName();
+        // Sources that keep failing are skipped until their breaker lets a trial call through
+        if (!sourceCircuitBreaker.tryAcquire(source)) {
+            System.out.println("Circuit breaker of source " + source + " is open, skipping for query " + queryId);
+            lifecycle.finishSource(source, SearchScope.ChildState.FAILED);
+            return;
+        }
+
+        // Bound concurrent requests per upstream source, then stay within its quota shared by every node.
+        // The slot comes first: a quota permit is spent once taken, so it is only taken for a call that can go ahead
+        try {
+            if (!sourceConcurrencyLimiter.acquire(source)) {
+                System.out.println("Source " + source + " is saturated, skipping for query " + queryId);
+                sourceCircuitBreaker.release(source);
+                lifecycle.finishSource(source, SearchScope.ChildState.FAILED);
+                return;
+            }
+        } catch (InterruptedException e) {
+            sourceCircuitBreaker.release(source);
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            if (!sourceRateLimiter.acquire(source, weight.getAsDouble())) {
+                System.out.println("Source " + source + " is out of quota, skipping for query " + queryId);
+                sourceConcurrencyLimiter.release(source);
+                sourceCircuitBreaker.release(source);
+                lifecycle.finishSource(source, SearchScope.ChildState.FAILED);
+                return;
+            }
+        } catch (InterruptedException e) {
+            sourceConcurrencyLimiter.release(source);
+            sourceCircuitBreaker.release(source);
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        boolean failed = false;
+        long start = System.nanoTime();
+        try {
+            adapter.search(request, new FlightSourceAdapter.Sink() {
+                private int index;
+
+                @Override
+                public void expect(int results) {
+                    lifecycle.expect(source, results);
                 }
-            }, executorService);
 
-            sourceFutures.add(sourceFuture);
+                @Override
+                public boolean accept(FlightResult result) {
+                    // Stop publishing as soon as the search is cancelled or timed out
+                    if (Thread.currentThread().isInterrupted()) {
+                        return false;
+                    }
+                    // Serialized once with its progress; the result stream and every transport reuse these bytes
+                    return lifecycle.publish(source, index++, result);
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            if (!Thread.currentThread().isInterrupted()) {
+                System.out.println("Source " + source + " failed for query " + queryId + ": " + e.getMessage());
+                failed = true;
+            }
+        } finally {
+            sourceConcurrencyLimiter.release(source);
         }
 
-        // Wait for all sources to complete
-        CompletableFuture.allOf(sourceFutures.toArray(new CompletableFuture[0])).join();
+        long elapsed = System.nanoTime() - start;
+        if (lifecycle.getScope().isCancelled()) {
+            // Stopped by a cancel, expiry or early stop, which says nothing about the source
+            sourceCircuitBreaker.release(source);
+        } else if (Thread.currentThread().isInterrupted()) {
+            // Cut off by its timeout or the deadline, and settled from the scope once joined. The elapsed time is a
+            // lower bound of the source's completion time, so an adaptive timeout grows back when the source slows
+            // down. Only a cut at the configured timeout counts against the source's breaker
+            sourceLatencyStats.recordCompletion(source, elapsed);
+            if (timeout.compareTo(flightSources.getTimeout(source)) >= 0) {
+                sourceCircuitBreaker.onFailure(source);
+            } else {
+                sourceCircuitBreaker.release(source);
+            }
+        } else if (failed) {
+            sourceCircuitBreaker.onFailure(source);
+            lifecycle.finishSource(source, SearchScope.ChildState.FAILED);
+        } else {
+            sourceLatencyStats.recordCompletion(source, elapsed);
+            sourceCircuitBreaker.onSuccess(source);
+            lifecycle.finishSource(source, SearchScope.ChildState.DONE);
+        }
     }
 }
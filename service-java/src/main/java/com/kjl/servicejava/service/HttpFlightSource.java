@@ -0,0 +1,235 @@
+package com.kjl.servicejava.service;
+
+import com.kjl.servicejava.model.FlightResult;
+import com.kjl.servicejava.util.FlightResultCodec;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Upstream source reached over HTTP: GET {base-url}/{name}/search streams the results back as NDJSON, one result
+ * per line, optionally preceded by {"type":"expect","total_expected":n}.
+ * Requests go through the shared pooled HTTP/2 client. When a source has not answered within the hedge percentile
+ * of its recent latencies, the request is sent a second time and whichever answers first successfully is used;
+ * the other is cancelled.
+ */
+public class HttpFlightSource implements FlightSourceAdapter {
+    private static final String NDJSON = "application/x-ndjson";
+
+    private final String name;
+    private final String searchUrl;
+    private final HttpClient httpClient;
+    private final FlightResultCodec flightResultCodec;
+    private final SourceLatencyStats sourceLatencyStats;
+    private final Duration timeout;
+    private final double hedgeQuantile;
+    private final long minHedgeDelayNanos;
+    private final BooleanSupplier hedgePermit;
+    private final LongAdder hedgedRequests = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    /**
+     * @param hedgeQuantile latency percentile (0..1) after which the request is hedged, 0 to never hedge
+     * @param hedgePermit    asked before sending a hedge; false skips it (e.g. no spare quota)
+     */
+    public HttpFlightSource(String name, String baseUrl, HttpClient httpClient, FlightResultCodec flightResultCodec,
+                            SourceLatencyStats sourceLatencyStats, Duration timeout, double hedgeQuantile,
+                            Duration minHedgeDelay, BooleanSupplier hedgePermit) {
+        this.name = name;
+        this.searchUrl = (baseUrl.endsWith("/") ? baseUrl : baseUrl + "/") + name + "/search";
+        this.httpClient = httpClient;
+        this.flightResultCodec = flightResultCodec;
+        this.sourceLatencyStats = sourceLatencyStats;
+        this.timeout = timeout;
+        this.hedgeQuantile = hedgeQuantile;
+        this.minHedgeDelayNanos = minHedgeDelay.toNanos();
+        this.hedgePermit = hedgePermit;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public long getHedgedRequests() {
+        return hedgedRequests.sum();
+    }
+
+    public long getHedgeWins() {
+        return hedgeWins.sum();
+    }
+
+    @Override
+    public void search(Request request, Sink sink) throws Exception {
+        HttpRequest httpRequest = HttpRequest.newBuilder(uri(request))
+            .timeout(timeout)
+            .header("Accept", NDJSON)
+            .GET()
+            .build();
+
+        HttpResponse<InputStream> response = send(httpRequest);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+            if (response.statusCode() != 200) {
+                throw new IOException("Source " + name + " answered with status " + response.statusCode());
+            }
+            String line;
+            while ((line = readLine(reader)) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                byte[] json = line.getBytes(StandardCharsets.UTF_8);
+                FlightResult result = flightResultCodec.decode(json);
+                if ("expect".equals(result.getType())) {
+                    if (result.getTotalExpected() != null) {
+                        sink.expect(result.getTotalExpected());
+                    }
+                } else if (!sink.accept(result)) {
+                    // Closing the body cancels the rest of the response
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads one line; a read interrupted by the source timeout, deadline or a cancel surfaces as interruption.
+     */
+    private static String readLine(BufferedReader reader) throws IOException, InterruptedException {
+        try {
+            return reader.readLine();
+        } catch (IOException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Sends the request, hedging it once the source is slower than usual. Returns the first successful response,
+     * or the last failure if both attempts failed.
+     */
+    private HttpResponse<InputStream> send(HttpRequest httpRequest) throws Exception {
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse<InputStream>> primary =
+            httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofInputStream());
+        CompletableFuture<HttpResponse<InputStream>> hedge = null;
+        try {
+            HttpResponse<InputStream> response;
+            long hedgeDelay = hedgeDelayNanos();
+            if (hedgeDelay < 0) {
+                response = primary.get();
+            } else {
+                try {
+                    response = primary.get(hedgeDelay, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    if (hedgePermit.getAsBoolean()) {
+                        hedgedRequests.increment();
+                        hedge = httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofInputStream());
+                        response = firstSuccessful(primary, hedge).get();
+                    } else {
+                        response = primary.get();
+                    }
+                }
+            }
+            if (response.statusCode() == 200) {
+                sourceLatencyStats.recordResponse(name, System.nanoTime() - start);
+            }
+            return response;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        } finally {
+            // No-op for the response in use; aborts the exchange that lost the race or was interrupted
+            primary.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+        }
+    }
+
+    private CompletableFuture<HttpResponse<InputStream>> firstSuccessful(CompletableFuture<HttpResponse<InputStream>> primary,
+                                                                       CompletableFuture<HttpResponse<InputStream>> hedge) {
+        CompletableFuture<HttpResponse<InputStream>> winner = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(2);
+        race(primary, winner, pending, false);
+        race(hedge, winner, pending, true);
+        return winner;
+    }
+
+    private void race(CompletableFuture<HttpResponse<InputStream>> attempt, CompletableFuture<HttpResponse<InputStream>> winner,
+                      AtomicInteger pending, boolean isHedge) {
+        attempt.whenComplete((response, error) -> {
+            if (error == null && response.statusCode() == 200) {
+                if (winner.complete(response)) {
+                    if (isHedge) {
+                        hedgeWins.increment();
+                    }
+                    return;
+                }
+            } else if (pending.decrementAndGet() == 0) {
+                // Both attempts failed: report the last failure
+                if (error != null) {
+                    winner.completeExceptionally(error);
+                } else {
+                    winner.complete(response);
+                }
+                return;
+            }
+            if (response != null) {
+                discard(response);
+            }
+        });
+    }
+
+    private static void discard(HttpResponse<InputStream> response) {
+        try {
+            response.body().close();
+        } catch (IOException e) {
+            // Nothing left to read from it
+        }
+    }
+
+    /**
+     * Hedge delay from the source's recent latencies, or -1 while hedging is off or there are too few samples.
+     */
+    private long hedgeDelayNanos() {
+        if (hedgeQuantile <= 0) {
+            return -1;
+        }
+        long percentile = sourceLatencyStats.getResponsePercentile(name, hedgeQuantile);
+        return percentile < 0 ? -1 : Math.max(percentile, minHedgeDelayNanos);
+    }
+
+    private URI uri(Request request) {
+        StringBuilder url = new StringBuilder(searchUrl.length() + 128).append(searchUrl)
+            .append("?from=").append(encode(request.getFrom()))
+            .append("&to=").append(encode(request.getTo()))
+            .append("&trip_type=").append(encode(request.getTripType()))
+            .append("&departure_date=").append(encode(request.getDepartureDate()))
+            .append("&pax=").append(request.getPax());
+        if (request.getReturnDate() != null) {
+            url.append("&return_date=").append(encode(request.getReturnDate()));
+        }
+        return URI.create(url.toString());
+    }
+
+    private static String encode(String value) {
+        return value != null ? URLEncoder.encode(value, StandardCharsets.UTF_8) : "";
+    }
+}
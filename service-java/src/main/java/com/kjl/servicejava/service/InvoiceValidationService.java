@@ -1,15 +1,23 @@
 package com.kjl.servicejava.service;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.kjl.servicejava.dto.ValidationResponseBuilder;
 import com.kjl.servicejava.exception.InvalidOrderTypeException;
+import com.kjl.servicejava.model.AirlinesOrder;
 import com.kjl.servicejava.model.BaseOrder;
 import com.kjl.servicejava.model.InvoiceValidationResponse;
+import com.kjl.servicejava.model.ProductOrder;
+import com.kjl.servicejava.model.ReservationOrder;
+import com.kjl.servicejava.model.ServiceOrder;
 import com.kjl.servicejava.validation.OrderValidator;
 import com.kjl.servicejava.validation.OrderValidatorFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.util.Map;
 
 /**
@@ -17,13 +25,28 @@ import java.util.Map;
  */
 @Service
 public class InvoiceValidationService {
+    /** Wrapper field name to order type. */
+    private static final Map<String, String> ORDER_TYPES = Map.of(
+        "ProductOrder", "Product",
+        "ServiceOrder", "Service",
+        "ReservationOrder", "Reservation",
+        "AirlinesOrder", "Airline"
+    );
+
     private final ObjectMapper objectMapper;
     private final OrderValidatorFactory validatorFactory;
+    private final Map<String, ObjectReader> orderReaders;
 
     @Autowired
     public InvoiceValidationService(OrderValidatorFactory validatorFactory) {
         this.objectMapper = new ObjectMapper();
         this.validatorFactory = validatorFactory;
+        this.orderReaders = Map.of(
+            "Product", objectMapper.readerFor(ProductOrder.class),
+            "Service", objectMapper.readerFor(ServiceOrder.class),
+            "Reservation", objectMapper.readerFor(ReservationOrder.class),
+            "Airline", objectMapper.readerFor(AirlinesOrder.class)
+        );
     }
 
     /**
@@ -33,12 +56,64 @@ public class InvoiceValidationService {
      * @return the validation response
      */
     public InvoiceValidationResponse validateInvoice(String jsonBody) {
+        try (JsonParser parser = objectMapper.createParser(jsonBody)) {
+            return validateInvoice(parser);
+        } catch (IOException e) {
+            return invalidJson(e);
+        }
+    }
+
+    /**
+     * Validates an invoice straight from the request bytes.
+     *
+     * @param jsonBody the UTF-8 JSON body containing the order
+     * @return the validation response
+     */
+    public InvoiceValidationResponse validateInvoice(byte[] jsonBody) {
+        try (JsonParser parser = objectMapper.createParser(jsonBody)) {
+            return validateInvoice(parser);
+        } catch (IOException e) {
+            return invalidJson(e);
+        }
+    }
+
+    /**
+     * Streams the wrapper object: the first known order field selects the validator and its body is bound
+     * directly into the typed order, without building an intermediate tree. The rest of the document is still
+     * read, so a malformed or trailing part is reported as invalid JSON before anything is validated.
+     */
+    private InvoiceValidationResponse validateInvoice(JsonParser parser) {
         try {
-            Map<String, Object> wrapper = objectMapper.readValue(jsonBody, Map.class);
-            
-            // Detect order type and get appropriate validator
-            String orderType = detectOrderType(wrapper);
-            if (orderType == null) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return ValidationResponseBuilder.create()
+                    .isValid(false)
+                    .withError("Invalid JSON format: expected a JSON object")
+                    .build();
+            }
+
+            String orderType = null;
+            BaseOrder order = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                // Detect order type from the wrapper field name
+                String fieldType = order == null ? ORDER_TYPES.get(parser.currentName()) : null;
+                parser.nextToken();
+                if (fieldType == null) {
+                    parser.skipChildren();
+                    continue;
+                }
+
+                // Parse order
+                orderType = fieldType;
+                order = parseOrder(parser, orderType);
+            }
+            if (parser.currentToken() != JsonToken.END_OBJECT || parser.nextToken() != null) {
+                return ValidationResponseBuilder.create()
+                    .isValid(false)
+                    .withError("Invalid JSON format: unexpected content after the JSON object")
+                    .build();
+            }
+
+            if (order == null) {
                 return ValidationResponseBuilder.create()
                     .isValid(false)
                     .withError("Invalid order format - could not parse as any known order type")
@@ -47,73 +122,45 @@ public class InvoiceValidationService {
 
             // Get validator using Factory pattern
             OrderValidator validator = validatorFactory.getValidator(orderType);
-            
-            // Parse order
-            BaseOrder order = parseOrder(wrapper, orderType);
-            
+
             // Build response using Builder pattern
             ValidationResponseBuilder builder = ValidationResponseBuilder.create()
                 .withOrderType(orderType)
                 .withOrderId(order.getTransactionDetails().getOrderId());
-            
+
             InvoiceValidationResponse response = builder.build();
-            
+
             // Validate using Strategy pattern
             validator.validate(order, response);
-            
+
             return response;
-            
+
         } catch (InvalidOrderTypeException e) {
             return ValidationResponseBuilder.create()
                 .isValid(false)
                 .withError(e.getMessage())
                 .build();
         } catch (Exception e) {
-            return ValidationResponseBuilder.create()
-                .isValid(false)
-                .withError("Invalid JSON format: " + e.getMessage())
-                .build();
+            // JsonParseException included: malformed JSON anywhere in the document
+            return invalidJson(e);
         }
     }
 
     /**
-     * Detects the order type from the JSON wrapper.
+     * Binds the order at the parser's current position with the reader for its type.
      */
-    private String detectOrderType(Map<String, Object> wrapper) {
-        if (wrapper.containsKey("ProductOrder")) {
-            return "Product";
-        }
-        if (wrapper.containsKey("ServiceOrder")) {
-            return "Service";
-        }
-        if (wrapper.containsKey("ReservationOrder")) {
-            return "Reservation";
+    private BaseOrder parseOrder(JsonParser parser, String orderType) throws IOException {
+        ObjectReader reader = orderReaders.get(orderType);
+        if (reader == null) {
+            throw new InvalidOrderTypeException("Unknown order type: " + orderType);
         }
-        if (wrapper.containsKey("AirlinesOrder")) {
-            return "Airline";
-        }
-        return null;
+        return reader.readValue(parser);
     }
 
-    /**
-     * Parses the order from the JSON wrapper based on order type.
-     */
-    private BaseOrder parseOrder(Map<String, Object> wrapper, String orderType) {
-        switch (orderType) {
-            case "Product":
-                return objectMapper.convertValue(wrapper.get("ProductOrder"), 
-                    com.kjl.servicejava.model.ProductOrder.class);
-            case "Service":
-                return objectMapper.convertValue(wrapper.get("ServiceOrder"), 
-                    com.kjl.servicejava.model.ServiceOrder.class);
-            case "Reservation":
-                return objectMapper.convertValue(wrapper.get("ReservationOrder"), 
-                    com.kjl.servicejava.model.ReservationOrder.class);
-            case "Airline":
-                return objectMapper.convertValue(wrapper.get("AirlinesOrder"), 
-                    com.kjl.servicejava.model.AirlinesOrder.class);
-            default:
-                throw new InvalidOrderTypeException("Unknown order type: " + orderType);
-        }
+    private InvoiceValidationResponse invalidJson(Exception e) {
+        return ValidationResponseBuilder.create()
+            .isValid(false)
+            .withError("Invalid JSON format: " + e.getMessage())
+            .build();
     }
 }
@@ -0,0 +1,343 @@
+package com.kjl.servicejava.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-connection bounded outbound queues for streaming transports (SSE, WebSocket).
+ * The fan-out reader only enqueues; each connection is drained by its own sender task, so a slow client
+ * never holds up delivery to other connections or queries. When a queue is full its overflow policy applies.
+ */
+@Service
+public class OutboundQueueService {
+
+    /**
+     * What to do when a connection's queue is full.
+     */
+    public enum OverflowPolicy {
+        /** Evict the oldest queued frame. */
+        DROP_OLDEST,
+        /**
+         * Merge consecutive queued flight and batch frames into one batch frame (every result kept, the newest
+         * progress reported once) and drop progress frames superseded by a newer one. If nothing can be merged
+         * (only source or view messages queued) the connection is closed as with DISCONNECT.
+         */
+        CONFLATE,
+        /** Close the connection; the client resumes from its last event id / seq. */
+        DISCONNECT;
+
+        /**
+         * Parses drop-oldest, conflate or disconnect (case-insensitive); null or unknown values give the fallback.
+         */
+        public static OverflowPolicy parse(String value, OverflowPolicy fallback) {
+            if (value == null || value.isBlank()) {
+                return fallback;
+            }
+            try {
+                return valueOf(value.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return fallback;
+            }
+        }
+    }
+
+    /**
+     * Why a queue closes its connection.
+     */
+    public enum CloseReason {
+        /** The queue overflowed and its policy (DISCONNECT, or CONFLATE with nothing to merge) closes it. */
+        OVERFLOW,
+        /** Sending a frame to the client failed. */
+        SEND_FAILED
+    }
+
+    /**
+     * Transport side of a queue. {@link #send} runs on the connection's sender task, never on the fan-out reader.
+     */
+    public interface Sender {
+        void send(QueryFanoutHub.Frame frame) throws Exception;
+
+        /** Closes the connection after an overflow or a failed send. */
+        void close(CloseReason reason);
+    }
+
+    private final QueryFanoutHub queryFanoutHub;
+    private final ExecutorService executor;
+    private final int capacity;
+    private final OverflowPolicy defaultPolicy;
+    private final Set<OutboundQueue> queues = ConcurrentHashMap.newKeySet();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder conflated = new LongAdder();
+    private final LongAdder disconnected = new LongAdder();
+
+    @Autowired
+    public OutboundQueueService(QueryFanoutHub queryFanoutHub,
+                                @Qualifier("streamSenderExecutor") ExecutorService executor,
+                                @Value("${flight.stream.outbound.capacity:1024}") int capacity,
+                                @Value("${flight.stream.outbound.overflow:drop-oldest}") String defaultPolicy) {
+        this.queryFanoutHub = queryFanoutHub;
+        this.executor = executor;
+        this.capacity = Math.max(1, capacity);
+        this.defaultPolicy = OverflowPolicy.parse(defaultPolicy, OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * Opens a queue for a new connection. A null or unknown policy falls back to flight.stream.outbound.overflow.
+     */
+    public OutboundQueue open(Sender sender, String policy) {
+        OutboundQueue queue = new OutboundQueue(sender, OverflowPolicy.parse(policy, defaultPolicy));
+        queues.add(queue);
+        return queue;
+    }
+
+    /**
+     * Queue-depth and overflow counters across the node's open connections.
+     */
+    public Map<String, Object> getStats() {
+        int queued = 0;
+        int maxDepth = 0;
+        for (OutboundQueue queue : queues) {
+            int depth = queue.depth();
+            queued += depth;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("connections", queues.size());
+        stats.put("capacity", capacity);
+        stats.put("default_overflow", defaultPolicy.name().toLowerCase(Locale.ROOT).replace('_', '-'));
+        stats.put("queued_frames", queued);
+        stats.put("max_queue_depth", maxDepth);
+        stats.put("sent_frames", sent.sum());
+        stats.put("dropped_frames", dropped.sum());
+        stats.put("conflated_frames", conflated.sum());
+        stats.put("disconnected", disconnected.sum());
+        return stats;
+    }
+
+    /**
+     * Key of the frames a newer frame of the same key supersedes under the CONFLATE policy, null for frames that
+     * must all be delivered (results, source and terminal messages). Progress frames carry cumulative progress.
+     */
+    private static String conflationKey(QueryFanoutHub.Frame frame) {
+        return "progress".equals(frame.getEvent()) ? frame.getEvent() : null;
+    }
+
+    /**
+     * Flight frames a frame carries (itself for a flight frame, its parts for a batch frame), null for the others.
+     */
+    private static List<QueryFanoutHub.Frame> flights(QueryFanoutHub.Frame frame) {
+        return frame.getResult() != null ? List.of(frame) : frame.getFlights();
+    }
+
+    /**
+     * Bounded queue of one connection. Frames are sent in order by at most one sender task at a time.
+     * Terminal frames are always accepted so a stream still ends properly under overflow.
+     */
+    public final class OutboundQueue {
+        private final Sender sender;
+        private final OverflowPolicy policy;
+        private final Deque<QueryFanoutHub.Frame> frames = new ArrayDeque<>();
+        private boolean draining;
+        private boolean closed;
+
+        private OutboundQueue(Sender sender, OverflowPolicy policy) {
+            this.sender = sender;
+            this.policy = policy;
+        }
+
+        /**
+         * Enqueues a frame without blocking.
+         */
+        public void offer(QueryFanoutHub.Frame frame) {
+            boolean startDrain = false;
+            boolean disconnect = false;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (frames.size() >= capacity && !frame.isTerminal()) {
+                    switch (policy) {
+                        case DROP_OLDEST -> {
+                            frames.pollFirst();
+                            dropped.increment();
+                        }
+                        case CONFLATE -> {
+                            if (conflate(frame)) {
+                                // Merged into the last queued batch, which is still waiting to be sent
+                                return;
+                            }
+                            if (frames.size() >= capacity) {
+                                if (conflationKey(frame) != null) {
+                                    // Nothing to make room for a frame a later one supersedes anyway
+                                    dropped.increment();
+                                    return;
+                                }
+                                disconnect = true;
+                            }
+                        }
+                        case DISCONNECT -> disconnect = true;
+                    }
+                    if (disconnect) {
+                        dropped.add(frames.size());
+                        frames.clear();
+                        closed = true;
+                    }
+                }
+                if (!disconnect) {
+                    frames.addLast(frame);
+                    if (!draining) {
+                        draining = true;
+                        startDrain = true;
+                    }
+                }
+            }
+            if (disconnect) {
+                disconnected.increment();
+                queues.remove(this);
+                executor.execute(() -> sender.close(CloseReason.OVERFLOW));
+            } else if (startDrain) {
+                executor.execute(this::drain);
+            }
+        }
+
+        /**
+         * Makes room in a full queue: drops the queued frames superseded by a newer one with the same conflation key,
+         * {@code incoming} included, then merges each run of consecutive flight and batch frames into one batch frame.
+         * If that freed nothing, a flight frame is merged into the queued batch it follows. Called with the monitor held.
+         *
+         * @return true if {@code incoming} was merged into the queue instead of having to be added
+         */
+        private boolean conflate(QueryFanoutHub.Frame incoming) {
+            dropSuperseded(incoming);
+
+            Deque<QueryFanoutHub.Frame> merged = new ArrayDeque<>(frames.size() + 1);
+            List<QueryFanoutHub.Frame> run = new ArrayList<>();
+            for (QueryFanoutHub.Frame frame : frames) {
+                if (flights(frame) != null) {
+                    run.add(frame);
+                } else {
+                    mergeInto(merged, run);
+                    merged.addLast(frame);
+                }
+            }
+            mergeInto(merged, run);
+            conflated.add(frames.size() - merged.size());
+            frames.clear();
+            frames.addAll(merged);
+
+            List<QueryFanoutHub.Frame> incomingFlights = flights(incoming);
+            QueryFanoutHub.Frame last = frames.peekLast();
+            if (frames.size() < capacity || incomingFlights == null || last == null || flights(last) == null) {
+                return false;
+            }
+            List<QueryFanoutHub.Frame> parts = new ArrayList<>(flights(last));
+            parts.addAll(incomingFlights);
+            frames.pollLast();
+            frames.addLast(queryFanoutHub.batchFrame(parts));
+            conflated.increment();
+            return true;
+        }
+
+        /**
+         * Appends a run of consecutive flight and batch frames as one frame, then empties the run.
+         */
+        private void mergeInto(Deque<QueryFanoutHub.Frame> merged, List<QueryFanoutHub.Frame> run) {
+            if (run.size() == 1) {
+                merged.addLast(run.get(0));
+            } else if (run.size() > 1) {
+                List<QueryFanoutHub.Frame> parts = new ArrayList<>();
+                for (QueryFanoutHub.Frame frame : run) {
+                    parts.addAll(flights(frame));
+                }
+                merged.addLast(queryFanoutHub.batchFrame(parts));
+            }
+            run.clear();
+        }
+
+        /**
+         * Drops the queued frames superseded by a newer one with the same conflation key, {@code incoming}
+         * included.
+         */
+        private void dropSuperseded(QueryFanoutHub.Frame incoming) {
+            Set<String> newer = new HashSet<>();
+            String incomingKey = conflationKey(incoming);
+            if (incomingKey != null) {
+                newer.add(incomingKey);
+            }
+            int removed = 0;
+            Iterator<QueryFanoutHub.Frame> newestFirst = frames.descendingIterator();
+            while (newestFirst.hasNext()) {
+                String key = conflationKey(newestFirst.next());
+                if (key != null && !newer.add(key)) {
+                    newestFirst.remove();
+                    removed++;
+                }
+            }
+            dropped.add(removed);
+        }
+
+        /**
+         * Drops anything still queued; called when the connection goes away.
+         */
+        public void close() {
+            synchronized (this) {
+                closed = true;
+                frames.clear();
+            }
+            queues.remove(this);
+        }
+
+        /**
+         * Frames waiting to be sent.
+         */
+        public synchronized int depth() {
+            return frames.size();
+        }
+
+        public OverflowPolicy getPolicy() {
+            return policy;
+        }
+
+        private void drain() {
+            while (true) {
+                QueryFanoutHub.Frame frame;
+                synchronized (this) {
+                    frame = closed ? null : frames.pollFirst();
+                    if (frame == null) {
+                        draining = false;
+                        return;
+                    }
+                }
+                try {
+                    sender.send(frame);
+                    sent.increment();
+                } catch (Exception e) {
+                    close();
+                    sender.close(CloseReason.SEND_FAILED);
+                    return;
+                }
+                if (frame.isTerminal()) {
+                    close();
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,460 @@
+package com.kjl.servicejava.service;
+
+import com.kjl.servicejava.model.FlightResult;
+import com.kjl.servicejava.repository.SearchResultStore;
+import com.kjl.servicejava.util.FlightResultCodec;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * In-process fan-out hub for flight search streams.
+ * One reader thread per node follows every query with local subscribers through a single blocking read on the
+ * {@link SearchResultStore}, builds each frame once from the stored bytes (without re-parsing flight results)
+ * and hands it to every local subscriber (SSE, WebSocket, long polling).
+ * A query is followed while it has subscribers and until its log ends (completed, expired or cancelled).
+ * Frames carry the message's sequence number ("seq"); a subscriber joining with a starting sequence first gets the
+ * stored messages after it replayed, then the live ones, with no gap and no duplicate in between.
+ * Progress comes from the stored messages themselves, which {@link SearchLifecycle} stamps as they are appended.
+ * Routing needs no per-query broker subscription: starting a search touches none of this, following a new query
+ * is a map insert plus (at most) one wake of the reader shared by every query that joined since its last read,
+ * and releasing a query is a map removal.
+ */
+@Service
+public class QueryFanoutHub {
+    private static final String DECODED = "flight-result";
+
+    private static final long NOT_STARTED = -1;
+    private static final byte[] RESULTS_OPEN = ",\"results\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RESULTS_CLOSE = "]}".getBytes(StandardCharsets.UTF_8);
+
+    private final SearchResultStore searchResultStore;
+    private final FlightResultCodec flightResultCodec;
+    private final Duration readTimeout;
+    private final ConcurrentMap<String, QueryChannel> channels = new ConcurrentHashMap<>();
+    private final Object idle = new Object();
+    private final AtomicBoolean wakePending = new AtomicBoolean();
+    private final Frame initialFrame;
+    private final Thread readerThread;
+    private volatile boolean running = true;
+
+    @Autowired
+    public QueryFanoutHub(SearchResultStore searchResultStore, FlightResultCodec flightResultCodec,
+                          @Value("${flight.stream.block-ms:2000}") long readTimeoutMillis) {
+        this.searchResultStore = searchResultStore;
+        this.flightResultCodec = flightResultCodec;
+        this.readTimeout = Duration.ofMillis(readTimeoutMillis);
+
+        Map<String, Object> initialProgress = Map.of(
+            "type", "progress",
+            "progress", 0,
+            "status", "searching",
+            "message", "Starting flight search..."
+        );
+        this.initialFrame = new Frame("progress", 0, flightResultCodec.encode(initialProgress), false);
+
+        this.readerThread = Thread.ofPlatform().name("flight-stream-reader").daemon().start(this::run);
+    }
+
+    /**
+     * Subscriber callback. Subscribers that need the raw stored messages (e.g. the long polling writer)
+     * override {@link #onEntries(List)}; streaming transports override {@link #onFrame(Frame)}.
+     */
+    public interface Subscriber {
+        /**
+         * The stored messages of one read, oldest first and ending with the terminal one if the log ended.
+         * Called on the reader thread once per read, so it must not block.
+         */
+        default void onEntries(List<SearchResultStore.Entry> entries) {
+        }
+
+        default void onFrame(Frame frame) {
+        }
+    }
+
+    /**
+     * A serialized frame ready to be written to a transport.
+     * The UTF-8 bytes are shared by every subscriber; the String form is created at most once.
+     */
+    public static final class Frame {
+        private final String event;
+        private final long seq;
+        private final byte[] bytes;
+        private final byte[] result;
+        private final List<Frame> flights;
+        private final boolean terminal;
+        private volatile String json;
+        private volatile Object[] encoded;
+
+        public Frame(String event, long seq, byte[] bytes, boolean terminal) {
+            this(event, seq, bytes, null, terminal);
+        }
+
+        public Frame(String event, long seq, byte[] bytes, byte[] result, boolean terminal) {
+            this(event, seq, bytes, result, null, terminal);
+        }
+
+        private Frame(String event, long seq, byte[] bytes, byte[] result, List<Frame> flights, boolean terminal) {
+            this.event = event;
+            this.seq = seq;
+            this.bytes = bytes;
+            this.result = result;
+            this.flights = flights;
+            this.terminal = terminal;
+        }
+
+        /** SSE event name: progress, flight, batch, source, completed, expired or cancelled. */
+        public String getEvent() { return event; }
+        /** Sequence number of the stored message this frame was built from, 0 for frames not backed by one. */
+        public long getSeq() { return seq; }
+        public byte[] getBytes() { return bytes; }
+        /** Stored flight result (with the progress it was appended with, without "seq"), for flight frames only. */
+        public byte[] getResult() { return result; }
+        /** Flight frames a batch frame combines, oldest first; null for any other frame. */
+        public List<Frame> getFlights() { return flights; }
+        public String getJson() {
+            String value = json;
+            if (value == null) {
+                value = new String(bytes, StandardCharsets.UTF_8);
+                json = value;
+            }
+            return value;
+        }
+        /** True if the stream should be closed after this frame. */
+        public boolean isTerminal() { return terminal; }
+
+        /**
+         * Derived form of this frame (e.g. its CBOR encoding or decoded result), created at most once per kind
+         * in use and shared by every subscriber asking for it.
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T getEncoded(String encoding, Function<Frame, T> encoder) {
+            // Flat copy-on-write {kind, value, kind, value, ...}; only a couple of kinds are ever in use
+            Object[] cached = encoded;
+            if (cached != null) {
+                for (int i = 0; i < cached.length; i += 2) {
+                    if (cached[i].equals(encoding)) {
+                        return (T) cached[i + 1];
+                    }
+                }
+            }
+            T value = encoder.apply(this);
+            synchronized (this) {
+                Object[] current = encoded;
+                int length = current == null ? 0 : current.length;
+                Object[] updated = new Object[length + 2];
+                if (current != null) {
+                    System.arraycopy(current, 0, updated, 0, length);
+                }
+                updated[length] = encoding;
+                updated[length + 1] = value;
+                encoded = updated;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Frame sent by transports right after a subscriber connects.
+     */
+    public Frame getInitialFrame() {
+        return initialFrame;
+    }
+
+    /**
+     * Combines consecutive flight frames into one "batch" frame: the stored results as a "results" array,
+     * with the progress of the last of them reported once. Stored bytes are copied as-is; only the last result
+     * is decoded, once for every subscriber batching it.
+     */
+    public Frame batchFrame(List<Frame> flights) {
+        Frame last = flights.get(flights.size() - 1);
+        long seq = last.getSeq();
+        byte[] header = flightResultCodec.withFields(new byte[]{'{', '}'},
+            "\"type\":\"batch\",\"seq\":" + seq + ",\"count\":" + flights.size() + "," + progressMembers(last));
+
+        // {<batch members>,"results":[<result>,<result>,...]}
+        int size = header.length + RESULTS_OPEN.length + RESULTS_CLOSE.length + flights.size();
+        for (Frame flight : flights) {
+            size += flight.getResult().length;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        out.write(header, 0, header.length - 1);
+        out.write(RESULTS_OPEN, 0, RESULTS_OPEN.length);
+        for (int i = 0; i < flights.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            byte[] result = flights.get(i).getResult();
+            out.write(result, 0, result.length);
+        }
+        out.write(RESULTS_CLOSE, 0, RESULTS_CLOSE.length);
+        return new Frame("batch", seq, out.toByteArray(), null, List.copyOf(flights), false);
+    }
+
+    /**
+     * Progress members stamped on a flight frame's stored result.
+     */
+    private String progressMembers(Frame flight) {
+        FlightResult result = flight.getEncoded(DECODED, f -> {
+            try {
+                return flightResultCodec.decode(f.getResult());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return "\"progress\":" + result.getProgress() + ",\"received_flights\":" + result.getReceivedFlights()
+            + ",\"total_expected\":" + result.getTotalExpected() + ",\"status\":\"" + result.getStatus() + "\"";
+    }
+
+    /**
+     * Adds a live-only subscriber for a query: it receives messages stored after it joined, or only the terminal
+     * message if the query's log had already ended.
+     */
+    public void subscribe(String queryId, Subscriber subscriber) {
+        subscribe(queryId, -1, subscriber);
+    }
+
+    /**
+     * Adds a subscriber for a query that first receives the stored frames after {@code fromSeq} (all of them for 0),
+     * then the live ones. A negative {@code fromSeq} skips the replay; a subscriber that joins once the log has
+     * ended still gets its terminal message. The first subscriber starts following the query's stream.
+     */
+    public void subscribe(String queryId, long fromSeq, Subscriber subscriber) {
+        Member member = new Member(subscriber);
+        QueryChannel channel = channels.compute(queryId, (id, existing) -> {
+            if (existing == null) {
+                existing = new QueryChannel(id);
+                System.out.println("Subscribed fan-out channel for query " + id);
+            }
+            existing.members.add(member);
+            return existing;
+        });
+
+        boolean started = false;
+        boolean ended;
+        synchronized (channel) {
+            if (channel.cursor == NOT_STARTED) {
+                channel.cursor = searchResultStore.lastSeq(queryId);
+                channel.ended = channel.storedTerminal();
+                started = channel.ended == null;
+            }
+            // Live dispatch holds the same lock, so the replay ends exactly where live delivery resumes
+            if (fromSeq >= 0 && fromSeq < channel.cursor) {
+                channel.replay(member, fromSeq);
+            } else if (channel.ended != null) {
+                // The log ended before this subscriber joined: nothing live will follow, so send it the end now
+                SearchResultStore.Entry terminal = channel.ended;
+                member.subscriber.onEntries(List.of(terminal));
+                member.subscriber.onFrame(channel.buildFrame(terminal.getSeq(), terminal.getPayload()));
+            }
+            member.live = true;
+            ended = channel.ended != null;
+        }
+        if (ended) {
+            channels.remove(queryId, channel);
+        }
+        if (started) {
+            // Let the reader include the new stream in its next blocking read
+            synchronized (idle) {
+                idle.notifyAll();
+            }
+            // One wake covers every query that started since the reader took its cursors
+            if (!wakePending.getAndSet(true)) {
+                searchResultStore.wakeReaders();
+            }
+        }
+    }
+
+    /**
+     * Removes a subscriber. The query is no longer followed once no local subscriber is left.
+     */
+    public void unsubscribe(String queryId, Subscriber subscriber) {
+        channels.computeIfPresent(queryId, (id, channel) -> {
+            channel.members.removeIf(member -> member.subscriber == subscriber);
+            if (!channel.members.isEmpty()) {
+                return channel;
+            }
+            System.out.println("Released fan-out channel for query " + id);
+            return null;
+        });
+    }
+
+    /**
+     * Number of local subscribers attached to a query.
+     */
+    public int getSubscriberCount(String queryId) {
+        QueryChannel channel = channels.get(queryId);
+        return channel != null ? channel.members.size() : 0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        readerThread.interrupt();
+    }
+
+    /**
+     * Reader loop: one blocking read for every followed query, then dispatch per query.
+     */
+    private void run() {
+        while (running) {
+            try {
+                // Queries started from here on are either in this read or wake it again
+                wakePending.set(false);
+                Map<String, Long> cursors = new HashMap<>();
+                for (QueryChannel channel : channels.values()) {
+                    long cursor = channel.cursor;
+                    if (cursor != NOT_STARTED) {
+                        cursors.put(channel.queryId, cursor);
+                    }
+                }
+                if (cursors.isEmpty()) {
+                    synchronized (idle) {
+                        idle.wait(1000);
+                    }
+                    continue;
+                }
+
+                Map<String, List<SearchResultStore.Entry>> entries = searchResultStore.readBlocking(cursors, readTimeout);
+                for (Map.Entry<String, List<SearchResultStore.Entry>> query : entries.entrySet()) {
+                    QueryChannel channel = channels.get(query.getKey());
+                    if (channel != null) {
+                        channel.deliver(query.getValue());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                System.out.println("Flight stream read failed, retrying: " + e.getMessage());
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * A subscriber of a channel; it only receives live frames once its replay is done.
+     */
+    private static final class Member {
+        private final Subscriber subscriber;
+        private volatile boolean live;
+
+        private Member(Subscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+    }
+
+    /**
+     * Local subscribers of a query and the sequence number of the last message delivered to them.
+     */
+    private final class QueryChannel {
+        private final String queryId;
+        private final List<Member> members = new CopyOnWriteArrayList<>();
+        private volatile long cursor = NOT_STARTED;
+        // Terminal message of the log once it has been read; guarded by the channel lock
+        private SearchResultStore.Entry ended;
+
+        private QueryChannel(String queryId) {
+            this.queryId = queryId;
+        }
+
+        private void deliver(List<SearchResultStore.Entry> entries) {
+            boolean finished = false;
+            // Serialize dispatch per query so progress and frame order stay consistent
+            synchronized (this) {
+                List<SearchResultStore.Entry> delivered = new ArrayList<>(entries.size());
+                for (SearchResultStore.Entry entry : entries) {
+                    if (entry.getSeq() <= cursor) {
+                        continue;
+                    }
+                    cursor = entry.getSeq();
+                    delivered.add(entry);
+
+                    Frame frame = buildFrame(entry.getSeq(), entry.getPayload());
+                    for (Member member : members) {
+                        if (member.live) {
+                            member.subscriber.onFrame(frame);
+                        }
+                    }
+                    if (frame.isTerminal()) {
+                        ended = entry;
+                        finished = true;
+                        break;
+                    }
+                }
+                if (!delivered.isEmpty()) {
+                    for (Member member : members) {
+                        if (member.live) {
+                            member.subscriber.onEntries(delivered);
+                        }
+                    }
+                }
+            }
+            if (finished && channels.remove(queryId, this)) {
+                // The log is over: stop following it even if some transport has not unsubscribed yet
+                System.out.println("Released fan-out channel for finished query " + queryId);
+            }
+        }
+
+        /**
+         * Sends the stored frames in (fromSeq, cursor] to one member. Called with the channel lock held.
+         */
+        private void replay(Member member, long fromSeq) {
+            List<SearchResultStore.Entry> entries = searchResultStore.read(queryId, fromSeq, (int) (cursor - fromSeq));
+            for (SearchResultStore.Entry entry : entries) {
+                if (entry.getSeq() > cursor) {
+                    break;
+                }
+                member.subscriber.onFrame(buildFrame(entry.getSeq(), entry.getPayload()));
+            }
+        }
+
+        /**
+         * The stored terminal message if the log already ended at the cursor, else null. Called with the channel
+         * lock held.
+         */
+        private SearchResultStore.Entry storedTerminal() {
+            if (cursor <= 0) {
+                return null;
+            }
+            List<SearchResultStore.Entry> last = searchResultStore.read(queryId, cursor - 1, 1);
+            if (last.isEmpty() || !SearchLifecycle.isTerminal(flightResultCodec.peekType(last.get(0).getPayload()))) {
+                return null;
+            }
+            return last.get(0);
+        }
+
+        private Frame buildFrame(long seq, byte[] payload) {
+            String type = flightResultCodec.peekType(payload);
+            // Stored messages already carry their progress; only the sequence number is added
+            byte[] bytes = flightResultCodec.withFields(payload, "\"seq\":" + seq);
+            if (type == null) {
+                return new Frame("flight", seq, bytes, payload, false);
+            }
+            return new Frame(type, seq, bytes, SearchLifecycle.isTerminal(type));
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.kjl.servicejava.service;
+
+import com.kjl.servicejava.model.FlightResult;
+import com.kjl.servicejava.repository.SearchResultStore;
+import com.kjl.servicejava.util.FlightResultCodec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Authoritative lifecycle of one search run, kept by the node running it.
+ * A run is STARTED until every source has ended (DONE, FAILED or TIMED_OUT), then COMPLETED, or EXPIRED when the
+ * search deadline cut it short; it can be CANCELLED at any point before that. Every transition is appended to the
+ * query's log as it happens ("source", then one of "completed", "expired", "cancelled"), and every flight result is
+ * stamped with the progress at the moment it was appended. Readers on any node, live or replaying, therefore see
+ * the same progress and exactly one terminal message, after the last result.
+ * With early stopping, a run also completes once its cheapest N results have not changed for a while, stopping the
+ * sources still running (reported as timed out).
+ */
+public class SearchLifecycle {
+
+    /**
+     * State of the run as a whole.
+     */
+    public enum State { STARTED, COMPLETED, CANCELLED, EXPIRED }
+
+    private final String queryId;
+    private final SearchScope scope;
+    private final SearchResultStore searchResultStore;
+    private final FlightResultCodec flightResultCodec;
+    private final Map<String, Source> sources = new LinkedHashMap<>();
+    // Cheapest settleCount prices so far, most expensive on top, and when that set last changed
+    private final int settleCount;
+    private final PriorityQueue<Long> cheapest;
+    private long cheapestChangedAt;
+    private State state = State.STARTED;
+    private int received;
+    private boolean settledEarly;
+
+    /**
+     * @param settleCount N of the cheapest-N early stop, 0 to always wait for the sources
+     */
+    public SearchLifecycle(String queryId, String[] sourceNames, SearchScope scope,
+                           SearchResultStore searchResultStore, FlightResultCodec flightResultCodec, int settleCount) {
+        this.queryId = queryId;
+        this.scope = scope;
+        this.searchResultStore = searchResultStore;
+        this.flightResultCodec = flightResultCodec;
+        this.settleCount = settleCount;
+        this.cheapest = settleCount > 0 ? new PriorityQueue<>(settleCount + 1, Collections.reverseOrder()) : null;
+        for (String source : sourceNames) {
+            sources.put(source, new Source());
+        }
+    }
+
+    /**
+     * True for the message types that end a query's log.
+     */
+    public static boolean isTerminal(String type) {
+        return "completed".equals(type) || "expired".equals(type) || "cancelled".equals(type);
+    }
+
+    /**
+     * Progress of one source. Guarded by the lifecycle's monitor.
+     */
+    private static final class Source {
+        private SearchScope.ChildState state = SearchScope.ChildState.RUNNING;
+        private int expected = -1;
+        private int received;
+    }
+
+    public SearchScope getScope() {
+        return scope;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Records how many results a source is going to return, once it knows.
+     */
+    public synchronized void expect(String source, int flights) {
+        sources.get(source).expected = flights;
+    }
+
+    /**
+     * Stamps a source's result with the search progress and appends it to the log.
+     * Results arriving once the run is over are dropped; returns false for those.
+     */
+    public synchronized boolean publish(String source, int index, FlightResult result) {
+        if (state != State.STARTED) {
+            return false;
+        }
+        sources.get(source).received++;
+        received++;
+        trackCheapest(result.getPrice());
+        stamp(result);
+        // Appended under the monitor so log order and the received counts agree
+        searchResultStore.appendResult(queryId, source, index, flightResultCodec.encode(result));
+        return true;
+    }
+
+    /**
+     * Records how a source ended and announces it. Only the first outcome of a source counts.
+     */
+    public synchronized void finishSource(String source, SearchScope.ChildState outcome) {
+        Source entry = sources.get(source);
+        if (state != State.STARTED || entry.state != SearchScope.ChildState.RUNNING) {
+            return;
+        }
+        entry.state = outcome;
+
+        FlightResult message = new FlightResult();
+        message.setType("source");
+        message.setSource(source);
+        message.setSourceState(outcome.name().toLowerCase(Locale.ROOT));
+        stamp(message);
+        searchResultStore.append(queryId, flightResultCodec.encode(message));
+    }
+
+    /**
+     * Ends the run once its scope has been joined: sources that never reported take their outcome from the scope,
+     * then "completed" (or "expired" past the search deadline) is appended. Returns the final state.
+     */
+    public synchronized State finish() {
+        if (state != State.STARTED) {
+            return state;
+        }
+        end(scope.isExpired() ? State.EXPIRED : State.COMPLETED);
+        return state;
+    }
+
+    /**
+     * Ends the run as EXPIRED right away (e.g. on an expiry sent by another node) and interrupts its sources,
+     * which are reported as timed out. Returns false if the run was already over.
+     */
+    public boolean expire() {
+        synchronized (this) {
+            if (state != State.STARTED) {
+                return false;
+            }
+            end(State.EXPIRED);
+        }
+        scope.cancel();
+        return true;
+    }
+
+    /**
+     * Ends the run as COMPLETED once its cheapest N results have not changed for {@code windowNanos}, interrupting
+     * the sources still running. Returns 0 if it did, -1 if the run is already over, otherwise how long to wait
+     * before asking again.
+     */
+    public long settleEarly(long windowNanos) {
+        synchronized (this) {
+            if (state != State.STARTED) {
+                return -1;
+            }
+            if (cheapest == null || cheapest.size() < settleCount) {
+                return windowNanos;
+            }
+            long stableFor = System.nanoTime() - cheapestChangedAt;
+            if (stableFor < windowNanos) {
+                return windowNanos - stableFor;
+            }
+            settledEarly = true;
+            end(State.COMPLETED);
+        }
+        scope.cancel();
+        return 0;
+    }
+
+    private void trackCheapest(Long price) {
+        if (cheapest == null || price == null) {
+            return;
+        }
+        if (cheapest.size() < settleCount) {
+            cheapest.add(price);
+        } else if (price < cheapest.peek()) {
+            cheapest.poll();
+            cheapest.add(price);
+        } else {
+            return;
+        }
+        cheapestChangedAt = System.nanoTime();
+    }
+
+    /**
+     * Settles the sources still running and appends the terminal message. Called with the monitor held.
+     */
+    private void end(State end) {
+        for (Map.Entry<String, Source> source : sources.entrySet()) {
+            if (source.getValue().state == SearchScope.ChildState.RUNNING) {
+                SearchScope.ChildState outcome = scope.getState(source.getKey());
+                finishSource(source.getKey(), outcome == SearchScope.ChildState.DONE
+                    || outcome == SearchScope.ChildState.FAILED ? outcome : SearchScope.ChildState.TIMED_OUT);
+            }
+        }
+
+        List<String> missing = new ArrayList<>();
+        Map<String, String> outcomes = new LinkedHashMap<>();
+        for (Map.Entry<String, Source> source : sources.entrySet()) {
+            outcomes.put(source.getKey(), source.getValue().state.name().toLowerCase(Locale.ROOT));
+            if (source.getValue().state != SearchScope.ChildState.DONE) {
+                missing.add(source.getKey());
+            }
+        }
+        state = end;
+
+        FlightResult message = new FlightResult();
+        message.setProgress(100);
+        message.setReceivedFlights(received);
+        message.setTotalExpected(received);
+        message.setTotalFlights(received);
+        message.setSources(outcomes);
+        if (state == State.EXPIRED) {
+            message.setType("expired");
+            message.setStatus("expired");
+            message.setMessage("Search deadline reached");
+        } else {
+            message.setType("completed");
+            message.setStatus("completed");
+            if (missing.isEmpty()) {
+                message.setMessage("All flights found");
+            } else if (settledEarly) {
+                message.setMessage("Cheapest " + settleCount + " flights settled, search completed without " + String.join(", ", missing));
+            } else {
+                message.setMessage("Search completed without " + String.join(", ", missing));
+            }
+        }
+        searchResultStore.append(queryId, flightResultCodec.encode(message));
+    }
+
+    /**
+     * Cancels the run: nothing more is appended after the cancellation and every source is interrupted.
+     * Returns false if the run was already over.
+     */
+    public boolean cancel() {
+        synchronized (this) {
+            if (state != State.STARTED) {
+                return false;
+            }
+            state = State.CANCELLED;
+            FlightResult message = new FlightResult();
+            message.setType("cancelled");
+            message.setProgress(0);
+            message.setStatus("cancelled");
+            message.setMessage("Search was cancelled");
+            message.setReceivedFlights(received);
+            searchResultStore.append(queryId, flightResultCodec.encode(message));
+        }
+        scope.cancel();
+        return true;
+    }
+
+    /**
+     * Progress members of a message appended now. Sources that have not reported their size yet are assumed to
+     * return as many results as the average source that has; progress stays below 100 until the run is over.
+     */
+    private void stamp(FlightResult message) {
+        int expected = 0;
+        int known = 0;
+        int knownTotal = 0;
+        int unknown = 0;
+        for (Source source : sources.values()) {
+            if (source.expected >= 0) {
+                known++;
+                knownTotal += source.expected;
+            }
+            if (source.state != SearchScope.ChildState.RUNNING) {
+                expected += source.received;
+            } else if (source.expected >= 0) {
+                expected += Math.max(source.expected, source.received);
+            } else {
+                unknown++;
+            }
+        }
+        if (known > 0) {
+            expected += unknown * Math.round((float) knownTotal / known);
+        }
+        expected = Math.max(expected, received);
+
+        message.setProgress(expected == 0 ? 0 : Math.min(99, received * 100 / expected));
+        message.setReceivedFlights(received);
+        message.setTotalExpected(expected);
+        message.setStatus("searching");
+    }
+}
@@ -0,0 +1,171 @@
+package com.kjl.servicejava.service;
+
+import com.kjl.servicejava.model.FlightResult;
+import com.kjl.servicejava.util.FlightResultCodec;
+import com.kjl.servicejava.util.LatencyDistribution;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * In-process simulation of an upstream provider: 8-10 random results, each after a delay drawn from its latency
+ * distribution, optionally after an initial delay and failing at a configured rate.
+ * Used directly (flight.sources.mode=simulated) and behind the stub source server.
+ */
+public class SimulatedFlightSource implements FlightSourceAdapter {
+    private static final String[] SEAT_CLASSES = {"Economy", "Business", "Premium Economy"};
+    private static final String[] DEPARTURE_TIMES = {"06:00", "08:30", "10:15", "12:00", "14:30", "16:45", "18:20", "20:00", "22:30"};
+
+    private static final Map<String, List<String>> AIRLINES = new HashMap<>() {{
+        put("kiwi", Arrays.asList("Lion Air", "Garuda", "AirAsia", "Batik Air", "Citilink"));
+        put("trip", Arrays.asList("Singapore Airlines", "Malaysia Airlines", "Thai Airways", "Vietnam Airlines", "Philippine Airlines"));
+        put("12go", Arrays.asList("Cebu Pacific", "Jetstar", "Tiger Air", "Scoot", "AirAsia"));
+    }};
+
+    private static final Map<String, String> SOURCE_PREFIXES = new HashMap<>() {{
+        put("kiwi", "KI");
+        put("trip", "TR");
+        put("12go", "12");
+    }};
+
+    private static final List<Map<String, Object>> COMMON_FLIGHTS = Arrays.asList(
+        new HashMap<>() {{ put("airline", "AirAsia"); put("flight_number", "AK123"); put("departure_time", "10:15"); put("base_price", 750000); }},
+        new HashMap<>() {{ put("airline", "Garuda"); put("flight_number", "GA456"); put("departure_time", "14:30"); put("base_price", 1200000); }},
+        new HashMap<>() {{ put("airline", "Lion Air"); put("flight_number", "JT789"); put("departure_time", "08:30"); put("base_price", 650000); }}
+    );
+
+    private final String name;
+    private final FlightResultCodec flightResultCodec;
+    private final LatencyDistribution firstDelay;
+    private final LatencyDistribution resultDelay;
+    private final double errorRate;
+
+    public SimulatedFlightSource(String name, FlightResultCodec flightResultCodec, LatencyDistribution firstDelay,
+                                 LatencyDistribution resultDelay, double errorRate) {
+        this.name = name;
+        this.flightResultCodec = flightResultCodec;
+        this.firstDelay = firstDelay;
+        this.resultDelay = resultDelay;
+        this.errorRate = errorRate;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Draws whether this call fails, at the configured error rate.
+     */
+    public boolean shouldFail() {
+        return errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+    }
+
+    @Override
+    public void search(Request request, Sink sink) throws Exception {
+        Random random = ThreadLocalRandom.current();
+        Thread.sleep(firstDelay.sampleMillis(random));
+        if (shouldFail()) {
+            throw new IOException("Simulated failure of source " + name);
+        }
+        search(request, sink, 8 + random.nextInt(3)); // Random between 8-10 flights
+    }
+
+    /**
+     * Produces {@code count} results without the initial delay or failure draw.
+     */
+    public void search(Request request, Sink sink, int count) throws InterruptedException {
+        Random random = ThreadLocalRandom.current();
+        sink.expect(count);
+
+        for (int i = 0; i < count; i++) {
+            Thread.sleep(resultDelay.sampleMillis(random));
+            // Stop producing as soon as the search is cancelled or timed out
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            if (!sink.accept(generate(request, i, random))) {
+                return;
+            }
+        }
+    }
+
+    private FlightResult generate(Request request, int index, Random random) {
+        String airline;
+        String flightNumber;
+        String departureTime;
+        long totalPrice;
+        boolean isCommon;
+
+        // 30% chance to offer a common flight
+        if (random.nextDouble() < 0.3 && index < COMMON_FLIGHTS.size()) {
+            Map<String, Object> commonFlight = COMMON_FLIGHTS.get(index);
+            int priceVariation = random.nextInt(100000) - 50000; // ±50k variation
+            int price = ((Number) commonFlight.get("base_price")).intValue() + priceVariation;
+            if (price < 500000) {
+                price = 500000;
+            }
+
+            airline = (String) commonFlight.get("airline");
+            flightNumber = (String) commonFlight.get("flight_number");
+            departureTime = (String) commonFlight.get("departure_time");
+            // Adjust price based on PAX
+            totalPrice = (long) price * request.getPax();
+            isCommon = true;
+        } else {
+            List<String> sourceAirlines = AIRLINES.getOrDefault(name, AIRLINES.get("kiwi"));
+            airline = sourceAirlines.get(random.nextInt(sourceAirlines.size()));
+            flightNumber = prefix() + (100 + random.nextInt(900));
+            departureTime = DEPARTURE_TIMES[random.nextInt(DEPARTURE_TIMES.length)];
+            int basePrice = 500000 + random.nextInt(2000000);
+            // Adjust price based on PAX
+            totalPrice = (long) basePrice * request.getPax();
+            isCommon = false;
+        }
+
+        FlightResult result = new FlightResult();
+        result.setSource(name);
+        result.setAirline(airline);
+        result.setFlightNumber(flightNumber);
+        result.setDepartureTime(departureTime);
+        result.setPrice(totalPrice);
+        result.setFrom(request.getFrom());
+        result.setTo(request.getTo());
+        result.setDepartureDate(request.getDepartureDate());
+        result.setReturnDate(request.getReturnDate());
+        result.setTripType(request.getTripType());
+        result.setPax(request.getPax());
+        result.setTimestamp(flightResultCodec.timestamp());
+        result.setSeatClass(SEAT_CLASSES[random.nextInt(SEAT_CLASSES.length)]);
+        result.setAffiliateLink(affiliateLink(name, request.getFrom(), request.getTo(), flightNumber, totalPrice, request.getPax()));
+        result.setBookingUrl(bookingUrl(name, request.getFrom(), request.getTo(), flightNumber, request.getDepartureDate(), request.getPax()));
+        result.setIsCommon(isCommon);
+        return result;
+    }
+
+    private String prefix() {
+        String prefix = SOURCE_PREFIXES.get(name);
+        return prefix != null ? prefix : name.substring(0, Math.min(2, name.length())).toUpperCase(Locale.ROOT);
+    }
+
+    private static String affiliateLink(String source, String from, String to, String flightNumber, long totalPrice, int pax) {
+        return new StringBuilder(128)
+            .append("https://").append(source).append(".com/affiliate?source=flight_search&from=").append(from)
+            .append("&to=").append(to).append("&flight=").append(flightNumber).append("&price=").append(totalPrice)
+            .append("&pax=").append(pax).append("&ref=YOUR_AFFILIATE_ID")
+            .toString();
+    }
+
+    private static String bookingUrl(String source, String from, String to, String flightNumber, String departureDate, int pax) {
+        return new StringBuilder(96)
+            .append("https://").append(source).append(".com/flights/").append(from).append('-').append(to)
+            .append('/').append(flightNumber).append("?departure_date=").append(departureDate).append("&pax=").append(pax)
+            .toString();
+    }
+}
@@ -0,0 +1,174 @@
+package com.kjl.servicejava.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per-source circuit breakers, so searches stop calling a provider that keeps failing or timing out.
+ * A breaker opens once at least min-calls of the last window calls were recorded and failure-rate of them failed.
+ * While open, calls are refused for open-ms; then one trial call is let through (half-open), which closes the breaker
+ * on success or opens it again on failure.
+ */
+@Component
+public class SourceCircuitBreaker {
+
+    /**
+     * Breaker state, as reported in the stats.
+     */
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int window;
+    private final int minCalls;
+    private final double failureRate;
+    private final long openNanos;
+    private final ConcurrentMap<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+    public SourceCircuitBreaker(@Value("${flight.sources.breaker.window:20}") int window,
+                                @Value("${flight.sources.breaker.min-calls:10}") int minCalls,
+                                @Value("${flight.sources.breaker.failure-rate:0.5}") double failureRate,
+                                @Value("${flight.sources.breaker.open-ms:30000}") long openMillis) {
+        this.window = Math.max(1, window);
+        this.minCalls = Math.max(1, Math.min(minCalls, this.window));
+        this.failureRate = failureRate;
+        this.openNanos = openMillis * 1_000_000;
+    }
+
+    /**
+     * Whether a call to the source may go ahead. A true return must be followed by
+     * {@link #onSuccess}, {@link #onFailure} or {@link #release} once the call is over.
+     */
+    public boolean tryAcquire(String source) {
+        return breaker(source).tryAcquire();
+    }
+
+    public void onSuccess(String source) {
+        breaker(source).record(true);
+    }
+
+    public void onFailure(String source) {
+        breaker(source).record(false);
+    }
+
+    /**
+     * Ends an acquired call that never reached the source (or was cancelled) without recording an outcome.
+     */
+    public void release(String source) {
+        breaker(source).release();
+    }
+
+    public State getState(String source) {
+        return breaker(source).state;
+    }
+
+    /**
+     * State and recent failure count per source, for monitoring.
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        breakers.forEach((source, breaker) -> {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            synchronized (breaker) {
+                entry.put("state", breaker.state.name().toLowerCase());
+                entry.put("recent_calls", breaker.recorded);
+                entry.put("recent_failures", breaker.failures);
+            }
+            stats.put(source, entry);
+        });
+        return stats;
+    }
+
+    private Breaker breaker(String source) {
+        return breakers.computeIfAbsent(source, Breaker::new);
+    }
+
+    /**
+     * Sliding window of call outcomes of one source.
+     */
+    private final class Breaker {
+        private final String source;
+        private final boolean[] outcomes = new boolean[window];
+        private int next;
+        private int recorded;
+        private int failures;
+        private volatile State state = State.CLOSED;
+        private long openedAt;
+        private boolean trialInFlight;
+
+        private Breaker(String source) {
+            this.source = source;
+        }
+
+        private synchronized boolean tryAcquire() {
+            if (state == State.CLOSED) {
+                return true;
+            }
+            if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+                state = State.HALF_OPEN;
+                trialInFlight = false;
+            }
+            if (state == State.HALF_OPEN && !trialInFlight) {
+                trialInFlight = true;
+                return true;
+            }
+            return false;
+        }
+
+        private synchronized void release() {
+            if (state == State.HALF_OPEN) {
+                // Let the next call be the trial
+                trialInFlight = false;
+            }
+        }
+
+        private synchronized void record(boolean success) {
+            if (state == State.HALF_OPEN) {
+                trialInFlight = false;
+                if (success) {
+                    reset();
+                    state = State.CLOSED;
+                    System.out.println("Circuit breaker of source " + source + " closed");
+                } else {
+                    open();
+                }
+                return;
+            }
+            if (state == State.OPEN) {
+                // A call that started before the breaker opened
+                return;
+            }
+            if (recorded == outcomes.length) {
+                if (!outcomes[next]) {
+                    failures--;
+                }
+            } else {
+                recorded++;
+            }
+            outcomes[next] = success;
+            next = (next + 1) % outcomes.length;
+            if (!success) {
+                failures++;
+            }
+            if (recorded >= minCalls && failures >= failureRate * recorded) {
+                open();
+            }
+        }
+
+        private void open() {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            reset();
+            System.out.println("Circuit breaker of source " + source + " opened for " + openNanos / 1_000_000 + "ms");
+        }
+
+        private void reset() {
+            next = 0;
+            recorded = 0;
+            failures = 0;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.kjl.servicejava.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds the number of concurrent in-flight requests to each upstream source.
+ * With virtual threads the executor no longer caps concurrency, so a burst of searches would otherwise
+ * open as many upstream calls as there are searches.
+ */
+@Component
+public class SourceConcurrencyLimiter {
+    private final int maxConcurrency;
+    private final long acquireTimeoutMillis;
+    private final ConcurrentMap<String, Semaphore> permits = new ConcurrentHashMap<>();
+
+    public SourceConcurrencyLimiter(@Value("${flight.search.source-max-concurrency:64}") int maxConcurrency,
+                                    @Value("${flight.search.source-acquire-timeout-ms:5000}") long acquireTimeoutMillis) {
+        this.maxConcurrency = maxConcurrency;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+    }
+
+    /**
+     * Waits for a free slot for the source.
+     *
+     * @return true if a slot was acquired and must be released with {@link #release(String)}
+     */
+    public boolean acquire(String source) throws InterruptedException {
+        return semaphore(source).tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void release(String source) {
+        semaphore(source).release();
+    }
+
+    /**
+     * Number of requests currently running against the source.
+     */
+    public int getInFlight(String source) {
+        return maxConcurrency - semaphore(source).availablePermits();
+    }
+
+    private Semaphore semaphore(String source) {
+        return permits.computeIfAbsent(source, s -> new Semaphore(maxConcurrency, true));
+    }
+}
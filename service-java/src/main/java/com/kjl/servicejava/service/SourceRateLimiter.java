@@ -0,0 +1,265 @@
+package com.kjl.servicejava.service;
+
+import com.kjl.servicejava.repository.SourceQuotaStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps every node's calls to an upstream source within the source's shared quota
+ * (flight.sources.quota.rate-per-second / burst, or flight.sources.{name}.* per source; 0 = unlimited).
+ * Permits are taken from the shared {@link SourceQuotaStore} bucket in batches and handed out locally, so the hot
+ * path rarely touches the store. Once a node holds no permits, calls wait in a weighted fair queue: each call is
+ * tagged with the virtual time plus 1/weight and the lowest tag is served next, so searches with more clients
+ * attached go first and background revalidations yield, without starving anyone. A node that is short of quota
+ * only asks for as many permits as it has callers waiting, leaving the rest to other nodes.
+ */
+@Component
+public class SourceRateLimiter {
+    private final SourceQuotaStore sourceQuotaStore;
+    private final Environment environment;
+    private final double defaultRate;
+    private final long defaultBurst;
+    private final int batch;
+    private final long maxWaitNanos;
+    private final ConcurrentMap<String, Limiter> limiters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SourceRateLimiter(SourceQuotaStore sourceQuotaStore,
+                             Environment environment,
+                             @Value("${flight.sources.quota.rate-per-second:0}") double defaultRate,
+                             @Value("${flight.sources.quota.burst:20}") long defaultBurst,
+                             @Value("${flight.sources.quota.batch:10}") int batch,
+                             @Value("${flight.sources.quota.max-wait-ms:2000}") long maxWaitMillis) {
+        this.sourceQuotaStore = sourceQuotaStore;
+        this.environment = environment;
+        this.defaultRate = defaultRate;
+        this.defaultBurst = defaultBurst;
+        this.batch = Math.max(1, batch);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    /**
+     * Waits (up to max-wait-ms) for a permit to call the source. {@code weight} is the caller's share when permits
+     * are short; 1 for a search with one client.
+     *
+     * @return true if a permit was taken; permits are spent by the call and never released
+     */
+    public boolean acquire(String source, double weight) throws InterruptedException {
+        Limiter limiter = limiter(source);
+        return limiter.unlimited() || limiter.acquire(weight > 0 ? weight : 1);
+    }
+
+    /**
+     * Takes a permit only if this node already holds a spare one, without waiting or asking the store.
+     * Used for optional extra calls such as hedged requests.
+     */
+    public boolean tryAcquire(String source) {
+        Limiter limiter = limiter(source);
+        return limiter.unlimited() || limiter.tryAcquire();
+    }
+
+    /**
+     * Quota, locally held permits, waiting calls and grant counts per rate-limited source, for monitoring.
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        limiters.forEach((source, limiter) -> {
+            if (!limiter.unlimited()) {
+                stats.put(source, limiter.getStats());
+            }
+        });
+        return stats;
+    }
+
+    private Limiter limiter(String source) {
+        return limiters.computeIfAbsent(source, s -> {
+            double rate = environment.getProperty("flight.sources." + s + ".rate-per-second", Double.class, defaultRate);
+            long burst = environment.getProperty("flight.sources." + s + ".burst", Long.class, defaultBurst);
+            return new Limiter(s, rate, Math.max(1, burst));
+        });
+    }
+
+    /**
+     * One caller waiting for a permit.
+     */
+    private static final class Waiter {
+        private final double tag;
+        private final long order;
+        private boolean granted;
+
+        private Waiter(double tag, long order) {
+            this.tag = tag;
+            this.order = order;
+        }
+    }
+
+    /**
+     * Local permits and fair queue of one source. Guarded by its monitor; the store is called outside it.
+     */
+    private final class Limiter {
+        private final String source;
+        private final double rate;
+        private final long burst;
+        // Locally held permits are only good for as long as the bucket would take to refill them
+        private final long permitLifetimeNanos;
+        private final PriorityQueue<Waiter> waiters = new PriorityQueue<>((a, b) ->
+            a.tag != b.tag ? Double.compare(a.tag, b.tag) : Long.compare(a.order, b.order));
+        private double virtualTime;
+        private long nextOrder;
+        private int permits;
+        private long permitsExpireAt;
+        private boolean fetching;
+        private long nextFetchAt;
+        private boolean shortOfQuota;
+        private long granted;
+        private long denied;
+        private long fetches;
+
+        private Limiter(String source, double rate, long burst) {
+            this.source = source;
+            this.rate = rate;
+            this.burst = burst;
+            this.permitLifetimeNanos = rate > 0
+                ? Math.max(TimeUnit.SECONDS.toNanos(1), (long) (batch / rate * 1_000_000_000)) : 0;
+            this.nextFetchAt = System.nanoTime();
+        }
+
+        private boolean unlimited() {
+            return rate <= 0;
+        }
+
+        private synchronized boolean tryAcquire() {
+            if (waiters.isEmpty() && takeLocal(System.nanoTime())) {
+                granted++;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean acquire(double weight) throws InterruptedException {
+            long deadline = System.nanoTime() + maxWaitNanos;
+            Waiter waiter;
+            synchronized (this) {
+                // Hot path: a prefetched permit and nobody ahead
+                if (waiters.isEmpty() && takeLocal(System.nanoTime())) {
+                    granted++;
+                    return true;
+                }
+                waiter = new Waiter(virtualTime + 1 / weight, nextOrder++);
+                waiters.add(waiter);
+            }
+
+            try {
+                while (true) {
+                    int request;
+                    synchronized (this) {
+                        long now = System.nanoTime();
+                        dispatch(now);
+                        if (waiter.granted) {
+                            return true;
+                        }
+                        if (now - deadline >= 0) {
+                            waiters.remove(waiter);
+                            denied++;
+                            return false;
+                        }
+                        if (fetching || now - nextFetchAt < 0) {
+                            long waitNanos = fetching ? deadline - now : Math.min(deadline - now, nextFetchAt - now);
+                            TimeUnit.NANOSECONDS.timedWait(this, Math.max(1, waitNanos));
+                            continue;
+                        }
+                        fetching = true;
+                        // Short of quota: take only what the callers waiting here need
+                        request = shortOfQuota ? Math.min(batch, waiters.size()) : batch;
+                    }
+                    fetch(Math.max(1, request));
+                }
+            } catch (InterruptedException e) {
+                synchronized (this) {
+                    if (!waiters.remove(waiter) && waiter.granted) {
+                        // Granted just as the caller gave up: keep the permit for the next one
+                        permits++;
+                        granted--;
+                        dispatch(System.nanoTime());
+                    }
+                }
+                throw e;
+            }
+        }
+
+        private void fetch(int request) {
+            SourceQuotaStore.Grant grant;
+            try {
+                grant = sourceQuotaStore.take(source, request, rate, burst);
+            } catch (RuntimeException e) {
+                System.out.println("Quota store unavailable for source " + source + ": " + e.getMessage());
+                grant = new SourceQuotaStore.Grant(0, 1000);
+            }
+            synchronized (this) {
+                long now = System.nanoTime();
+                fetching = false;
+                fetches++;
+                shortOfQuota = grant.getGranted() < request;
+                if (grant.getGranted() > 0) {
+                    permits += grant.getGranted();
+                    permitsExpireAt = now + permitLifetimeNanos;
+                    nextFetchAt = now;
+                } else {
+                    // Empty bucket: ask again once it has refilled a token
+                    nextFetchAt = now + TimeUnit.MILLISECONDS.toNanos(Math.max(1, grant.getRetryAfterMillis()));
+                }
+                dispatch(now);
+                notifyAll();
+            }
+        }
+
+        /**
+         * Hands locally held permits to the waiters with the lowest tags. Called with the monitor held.
+         */
+        private void dispatch(long now) {
+            boolean any = false;
+            while (!waiters.isEmpty() && takeLocal(now)) {
+                Waiter next = waiters.poll();
+                next.granted = true;
+                virtualTime = Math.max(virtualTime, next.tag);
+                granted++;
+                any = true;
+            }
+            if (any) {
+                notifyAll();
+            }
+        }
+
+        private boolean takeLocal(long now) {
+            if (permits > 0 && now - permitsExpireAt >= 0) {
+                permits = 0;
+            }
+            if (permits == 0) {
+                return false;
+            }
+            permits--;
+            return true;
+        }
+
+        private synchronized Map<String, Object> getStats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("rate_per_second", rate);
+            stats.put("burst", burst);
+            stats.put("local_permits", permits);
+            stats.put("waiting", waiters.size());
+            stats.put("granted", granted);
+            stats.put("denied", denied);
+            stats.put("store_fetches", fetches);
+            return stats;
+        }
+    }
+}
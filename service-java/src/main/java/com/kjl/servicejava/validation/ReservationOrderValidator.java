@@ -17,7 +17,7 @@ public class ReservationOrderValidator extends AbstractOrderValidator {
     protected void validateOrderItems(BaseOrder order, InvoiceValidationResponse response, ValidationContext context) {
         ReservationOrder reservationOrder = (ReservationOrder) order;
         context.setCurrency(reservationOrder.getTransactionDetails().getCurrency());
-        context.setDeclaredTotal(reservationOrder.getTransactionDetails().getGrossAmt());
+        context.setDeclaredTotal(context.toMinor(reservationOrder.getTransactionDetails().getGrossAmt()));
 
         List<ReservationItem> items = reservationOrder.getItems();
         for (int i = 0; i < items.size(); i++) {
@@ -27,35 +27,27 @@ public class ReservationOrderValidator extends AbstractOrderValidator {
     }
 
     private void validateReservationItem(ReservationItem item, int index, InvoiceValidationResponse response, ValidationContext context) {
-        double basePrice = item.getBasePrice();
-        PriceCalculation priceCalc = calculatePriceInfo(item.getPriceInfo());
-        double itemAddons = priceCalc.getAddons();
-
-        double subtotalBeforeTaxAndDiscounts = basePrice + itemAddons;
-        double subtotalAfterDiscounts = subtotalBeforeTaxAndDiscounts;
-        double tax = item.getTax() != null ? item.getTax() : 0.0;
-        double subtotalAfterTax = subtotalAfterDiscounts + tax;
-        double itemTotal = subtotalAfterTax;
-
-        ItemCalculation itemCalc = createItemCalculation(
-            item.getMerchantName(), index, item.getBasePrice(), 1,
-            subtotalBeforeTaxAndDiscounts, 0.0,
-            subtotalAfterDiscounts, tax, 0.0,
-            itemAddons, itemTotal, item.getTotalPrice()
+        long basePrice = context.toMinor(item.getBasePrice());
+        long itemAddons = calculateAddons(item.getPriceInfo(), context);
+
+        long subtotalBeforeTaxAndDiscounts = basePrice + itemAddons;
+        long subtotalAfterDiscounts = subtotalBeforeTaxAndDiscounts;
+        long tax = item.getTax() != null ? context.toMinor(item.getTax()) : 0;
+        long itemTotal = subtotalAfterDiscounts + tax;
+        long declaredTotal = context.toMinor(item.getTotalPrice());
+
+        boolean valid = context.addItem(
+            item.getMerchantName(), index, basePrice, 1,
+            subtotalBeforeTaxAndDiscounts, 0,
+            subtotalAfterDiscounts, tax, 0,
+            itemAddons, itemTotal, declaredTotal
         );
-        context.addItemCalculation(itemCalc);
 
-        if (!itemCalc.getIsValid()) {
+        if (!valid) {
             response.getErrors().add(String.format(
                 "Reservation %d (%s): Calculated total %.2f does not match declared total %.2f",
-                index, item.getMerchantName(), itemTotal, item.getTotalPrice()));
+                index, item.getMerchantName(), context.toMajor(itemTotal), item.getTotalPrice()));
             response.setIsValid(false);
         }
-
-        context.addToCalculatedTotal(itemTotal);
-        context.addToTotalTax(tax);
-        context.addToSubtotalBeforeTaxAndDiscounts(subtotalBeforeTaxAndDiscounts);
-        context.addToSubtotalAfterDiscounts(subtotalAfterDiscounts);
-        context.addToSubtotalAfterTax(subtotalAfterTax);
     }
 }
@@ -17,7 +17,7 @@ public class ServiceOrderValidator extends AbstractOrderValidator {
     protected void validateOrderItems(BaseOrder order, InvoiceValidationResponse response, ValidationContext context) {
         ServiceOrder serviceOrder = (ServiceOrder) order;
         context.setCurrency(serviceOrder.getTransactionDetails().getCurrency());
-        context.setDeclaredTotal(serviceOrder.getTransactionDetails().getGrossAmt());
+        context.setDeclaredTotal(context.toMinor(serviceOrder.getTransactionDetails().getGrossAmt()));
 
         List<ServiceItem> items = serviceOrder.getItems();
         for (int i = 0; i < items.size(); i++) {
@@ -27,47 +27,38 @@ public class ServiceOrderValidator extends AbstractOrderValidator {
     }
 
     private void validateServiceItem(ServiceItem item, int index, InvoiceValidationResponse response, ValidationContext context) {
-        double basePrice = item.getBasePrice();
-        PriceCalculation priceCalc = calculatePriceInfo(item.getPriceInfo());
-        double itemAddons = priceCalc.getAddons();
+        long basePrice = context.toMinor(item.getBasePrice());
+        long itemAddons = calculateAddons(item.getPriceInfo(), context);
 
-        double subtotalBeforeTaxAndDiscounts = basePrice + itemAddons;
+        long subtotalBeforeTaxAndDiscounts = basePrice + itemAddons;
 
-        // Apply discount
-        double discountAmount = 0.0;
+        // Apply discount (percentages are rounded half up to the currency's minor unit)
+        long discountAmount = 0;
         if (item.getDiscount() != null && item.getDiscount().getValue() != null && item.getDiscount().getValue() > 0) {
             if ("Percentage".equals(item.getDiscount().getType())) {
-                discountAmount = subtotalBeforeTaxAndDiscounts * (item.getDiscount().getValue() / 100);
+                discountAmount = context.percentOf(subtotalBeforeTaxAndDiscounts, item.getDiscount().getValue());
             } else if ("Fixed".equals(item.getDiscount().getType())) {
-                discountAmount = item.getDiscount().getValue();
+                discountAmount = context.toMinor(item.getDiscount().getValue());
             }
         }
 
-        double subtotalAfterDiscounts = subtotalBeforeTaxAndDiscounts - discountAmount;
-        double tax = item.getTax() != null ? item.getTax() : 0.0;
-        double subtotalAfterTax = subtotalAfterDiscounts + tax;
-        double itemTotal = subtotalAfterTax;
+        long subtotalAfterDiscounts = subtotalBeforeTaxAndDiscounts - discountAmount;
+        long tax = item.getTax() != null ? context.toMinor(item.getTax()) : 0;
+        long itemTotal = subtotalAfterDiscounts + tax;
+        long declaredTotal = context.toMinor(item.getTotalPrice());
 
-        ItemCalculation itemCalc = createItemCalculation(
-            item.getName(), index, item.getBasePrice(), 1,
+        boolean valid = context.addItem(
+            item.getName(), index, basePrice, 1,
             subtotalBeforeTaxAndDiscounts, discountAmount,
-            subtotalAfterDiscounts, tax, 0.0,
-            itemAddons, itemTotal, item.getTotalPrice()
+            subtotalAfterDiscounts, tax, 0,
+            itemAddons, itemTotal, declaredTotal
         );
-        context.addItemCalculation(itemCalc);
 
-        if (!itemCalc.getIsValid()) {
+        if (!valid) {
             response.getErrors().add(String.format(
                 "Service %d (%s): Calculated total %.2f does not match declared total %.2f",
-                index, item.getName(), itemTotal, item.getTotalPrice()));
+                index, item.getName(), context.toMajor(itemTotal), item.getTotalPrice()));
             response.setIsValid(false);
         }
-
-        context.addToCalculatedTotal(itemTotal);
-        context.addToTotalTax(tax);
-        context.addToTotalDiscounts(discountAmount);
-        context.addToSubtotalBeforeTaxAndDiscounts(subtotalBeforeTaxAndDiscounts);
-        context.addToSubtotalAfterDiscounts(subtotalAfterDiscounts);
-        context.addToSubtotalAfterTax(subtotalAfterTax);
     }
 }